@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.benchmarks;
+
+import ftc.team6460.javadeck.api.planner.ObstacleException;
+import ftc.team6460.javadeck.api.planner.geom.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the fields that benchmarks run against: a square lattice of waypoints, 100mm apart and connected to their eight
+ * neighbours, with square obstacles scattered over it.
+ */
+final class BenchmarkFields {
+    static final long SPACING = 100;
+
+    private BenchmarkFields() {
+    }
+
+    /**
+     * Returns the side of the lattice, in waypoints, for a given waypoint count.
+     */
+    static int side(int waypoints) {
+        return (int) Math.ceil(Math.sqrt(waypoints));
+    }
+
+    /**
+     * Builds a field.
+     *
+     * @param waypoints       The number of lattice points. Those falling inside obstacles are left out.
+     * @param obstacleDensity The fraction of the field's area to cover with obstacles, before overlaps.
+     * @param seed            The seed for obstacle placement.
+     */
+    static Field lattice(int waypoints, double obstacleDensity, long seed) throws DegeneratePolygonException {
+        int side = side(waypoints);
+        long extent = side * SPACING;
+        // obstacles grow with the field, so that their count (and the cost of checking each) stays about the same
+        long box = Math.max(3 * SPACING, extent / 12);
+        int count = (int) Math.round(obstacleDensity * extent * extent / (double) (box * box));
+        Random r = new Random(seed);
+        Field f = new Field();
+        for (int i = 0; i < count; i++) {
+            // offset by half a spacing, so that edges fall between lattice points
+            long x = r.nextInt(side) * SPACING + SPACING / 2, y = r.nextInt(side) * SPACING + SPACING / 2;
+            f.addZone(new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, new Point2D[]{
+                    new Point2D(x, y), new Point2D(x + box, y), new Point2D(x + box, y + box), new Point2D(x, y + box)}));
+        }
+
+        Waypoint[][] grid = new Waypoint[side][side];
+        for (int i = 0; i < waypoints; i++) {
+            int x = i % side, y = i / side;
+            try {
+                Waypoint w = f.getWaypoint(new Point2D(x * SPACING, y * SPACING));
+                f.addWaypoint(w);
+                grid[x][y] = w;
+            } catch (ObstacleException | DuplicateWaypointException ignored) {
+            }
+        }
+        for (Waypoint[] pair : neighbours(grid)) {
+            try {
+                f.addConnection(pair[0], pair[1]);
+            } catch (ObstacleException ignored) {
+            }
+        }
+        return f;
+    }
+
+    // every pair of lattice neighbours, horizontal, vertical and diagonal
+    private static List<Waypoint[]> neighbours(Waypoint[][] grid) {
+        List<Waypoint[]> rV = new ArrayList<>();
+        int side = grid.length;
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                for (int dx = 0; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        if ((dx != 0 || dy > 0) && x + dx < side && y + dy >= 0 && y + dy < side
+                                && grid[x][y] != null && grid[x + dx][y + dy] != null) {
+                            rV.add(new Waypoint[]{grid[x][y], grid[x + dx][y + dy]});
+                        }
+                    }
+                }
+            }
+        }
+        return rV;
+    }
+}
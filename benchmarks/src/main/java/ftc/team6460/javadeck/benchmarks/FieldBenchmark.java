@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.benchmarks;
+
+import ftc.team6460.javadeck.api.planner.ObstacleException;
+import ftc.team6460.javadeck.api.planner.geom.Field;
+import ftc.team6460.javadeck.api.planner.geom.Point2D;
+import ftc.team6460.javadeck.api.planner.geom.Waypoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for queries and updates on a built {@link Field}, over a range of field sizes and obstacle densities.
+ * Each invocation uses the next of a fixed set of random inputs, so results do not hinge on one lucky query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+    // a power of two, so the input index wraps with a mask
+    private static final int INPUTS = 256;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int waypoints;
+
+    @Param({"0", "0.1", "0.3"})
+    public double obstacleDensity;
+
+    private Field field;
+    private Waypoint[] starts, ends;
+    private Point2D[] queries;
+    private Waypoint[] connectFrom, connectTo;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        field = BenchmarkFields.lattice(waypoints, obstacleDensity, 6460);
+        List<Waypoint> all = new ArrayList<>();
+        for (Waypoint w : field.getWaypoints()) {
+            all.add(w);
+        }
+        Random r = new Random(6460);
+        long extent = BenchmarkFields.side(waypoints) * BenchmarkFields.SPACING;
+
+        // paths between random pairs that are connected, so that findPath does not just fail fast
+        starts = new Waypoint[INPUTS];
+        ends = new Waypoint[INPUTS];
+        for (int i = 0; i < INPUTS; ) {
+            Waypoint a = all.get(r.nextInt(all.size())), b = all.get(r.nextInt(all.size()));
+            if (field.isReachable(a, b)) {
+                starts[i] = a;
+                ends[i] = b;
+                i++;
+            }
+        }
+
+        queries = new Point2D[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            queries[i] = new Point2D((long) (r.nextDouble() * extent), (long) (r.nextDouble() * extent));
+        }
+
+        // existing connections, which addConnection re-checks in full before finding them already present
+        connectFrom = new Waypoint[INPUTS];
+        connectTo = new Waypoint[INPUTS];
+        for (int i = 0; i < INPUTS; ) {
+            Waypoint a = all.get(r.nextInt(all.size()));
+            if (a.getDegree() > 0) {
+                connectFrom[i] = a;
+                connectTo[i] = a.getNeighbor(r.nextInt(a.getDegree()));
+                i++;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Waypoint> findPath() throws ObstacleException {
+        int i = next++ & (INPUTS - 1);
+        return field.findPath(starts[i], ends[i]);
+    }
+
+    @Benchmark
+    public Waypoint getNearest() {
+        return field.getNearest(queries[next++ & (INPUTS - 1)]);
+    }
+
+    @Benchmark
+    public Waypoint addConnection() throws ObstacleException {
+        int i = next++ & (INPUTS - 1);
+        field.addConnection(connectFrom[i], connectTo[i]);
+        return connectFrom[i];
+    }
+}
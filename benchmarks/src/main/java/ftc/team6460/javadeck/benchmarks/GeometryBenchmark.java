@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.benchmarks;
+
+import ftc.team6460.javadeck.api.planner.geom.Field;
+import ftc.team6460.javadeck.api.planner.geom.GeometryUtils;
+import ftc.team6460.javadeck.api.planner.geom.Point2D;
+import ftc.team6460.javadeck.api.planner.geom.Segment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the geometric primitives that field construction and queries are built on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    private static final int INPUTS = 1024;
+
+    /**
+     * The number of vertices of the zone tested against. Odd vertices are pulled inwards, so the zone is not convex.
+     */
+    @Param({"4", "16", "64"})
+    public int vertices;
+
+    private Field.Zone zone;
+    private Point2D[] points;
+    private Segment[] segments;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Point2D[] poly = new Point2D[vertices];
+        for (int i = 0; i < vertices; i++) {
+            double radius = (i % 2 == 0 || vertices < 6) ? 1000 : 600;
+            double theta = 2 * Math.PI * i / vertices;
+            poly[i] = new Point2D(Math.round(radius * Math.cos(theta)), Math.round(radius * Math.sin(theta)));
+        }
+        zone = new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, poly);
+
+        Random r = new Random(6460);
+        points = new Point2D[INPUTS];
+        segments = new Segment[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            points[i] = new Point2D(r.nextInt(3000) - 1500, r.nextInt(3000) - 1500);
+            segments[i] = new Segment(new Point2D(r.nextInt(3000) - 1500, r.nextInt(3000) - 1500),
+                    new Point2D(r.nextInt(3000) - 1500, r.nextInt(3000) - 1500));
+        }
+    }
+
+    @Benchmark
+    public boolean zoneContains() {
+        return zone.contains(points[next++ & (INPUTS - 1)]);
+    }
+
+    @Benchmark
+    public int intersect2D() {
+        int i = next++ & (INPUTS - 1);
+        return GeometryUtils.intersect2D(segments[i], segments[(i + 1) & (INPUTS - 1)]);
+    }
+}
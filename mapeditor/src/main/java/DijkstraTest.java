@@ -50,7 +50,7 @@ public class DijkstraTest extends BasicGame {
         System.out.println("button = [" + button + "], x = [" + x + "], y = [" + y + "], clickCount = [" + clickCount + "]");
 
         if (button == 0) try {
-            f.addWaypoint(Waypoint.fromPos(new Point2D(x, y)));
+            f.addWaypoint(f.getWaypoint(new Point2D(x, y)));
         } catch (DuplicateWaypointException | ObstacleException e) {
             e.printStackTrace();
         }
@@ -153,7 +153,7 @@ public class DijkstraTest extends BasicGame {
 
         for (int x = 0; x < 20; x++) {
             for (int y = 0; y < 20; y++) {
-                test[x][y] = Waypoint.fromPos(new Point2D(x * 40 + 80, y * 40 + 80));
+                test[x][y] = f.getWaypoint(new Point2D(x * 40 + 80, y * 40 + 80));
                 if ((x > 3 && x < 18 && (y == 6 || y == 13)) || (y < 18 && x == 8)) {
                     test[x][y] = null;
                 }
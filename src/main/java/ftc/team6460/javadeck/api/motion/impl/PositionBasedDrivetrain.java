@@ -70,6 +70,13 @@ public class PositionBasedDrivetrain extends RobotDrive {
      */
     private final double robotWidth;
 
+    /**
+     * Returns the robot width in meters. Half of this, in mm, is the clearance to pass to {@link ftc.team6460.javadeck.api.planner.geom.Field#setMinimumClearance(long)}.
+     */
+    public double getRobotWidth() {
+        return robotWidth;
+    }
+
     /**
      * Maximum acceleration, in meters/sec^2, to allow.
      */
@@ -85,20 +92,24 @@ public class PositionBasedDrivetrain extends RobotDrive {
     // TODO handle obstacle collisions
     @Override
     protected void move0(RelativePosition travel, boolean suppressObstacles) throws RobotHardwareException, ObstacleException {
+        move0(travel.getDistance(), travel.getTheta(), suppressObstacles);
+    }
+
+    @Override
+    protected void move0(double distance, double theta, boolean suppressObstacles) throws RobotHardwareException, ObstacleException {
         //if (!holonomicOptimization) {
-        this.doStandardMove(travel);
+        this.doStandardMove(distance, theta);
 //
         //} else {
         //     doHolonomicOptimizedMove(travel);
 
 
         //}
-        collectedAngularDrift += travel.getTheta() / 1000;
-        collectedDrift += travel.getDistance() / 1000;
+        collectedAngularDrift += theta / 1000;
+        collectedDrift += distance / 1000;
     }
 
-    private void doStandardMove(RelativePosition travel) throws RobotHardwareException {
-        double thetaNeeded = travel.getTheta();
+    private void doStandardMove(double distance, double thetaNeeded) throws RobotHardwareException {
         if (thetaNeeded != 0) {
             double circumDistance = Math.abs(thetaNeeded * this.robotWidth / 2);
             double distDuringAccel = Math.max(0.5 * this.maxSpeed * this.maxSpeed / this.accel, circumDistance / 2);
@@ -148,7 +159,6 @@ public class PositionBasedDrivetrain extends RobotDrive {
             }
         }
 
-        double distance = travel.getDistance();
         double distDuringAccel = Math.max(0.5 * this.maxSpeed * this.maxSpeed / this.accel, distance / 2);
         double holdTime = (distDuringAccel * 2 - distance) / this.maxSpeed;
         double accelTime = Math.sqrt(2 * distDuringAccel / this.accel);
@@ -259,6 +269,16 @@ public class PositionBasedDrivetrain extends RobotDrive {
         return 0;
     }
 
+    @Override
+    protected double calculateDrift(double distance, double theta) {
+        return 0;
+    }
+
+    @Override
+    protected double calculateAngularDrift(double distance, double theta) {
+        return 0;
+    }
+
     @Override
     public double calculateTime(RelativePosition travel) {
         return 0;
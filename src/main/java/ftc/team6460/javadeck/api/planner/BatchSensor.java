@@ -0,0 +1,52 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner;
+
+/**
+ * A sensor that can evaluate many points at once. The position integrators check for this interface, and call it with a
+ * whole row or tile of their search grid, or all of their particles; sensors with costly setup, or that can fill the
+ * array in a tight loop, should implement it. Other sensors are evaluated a point at a time.
+ */
+public interface BatchSensor extends Sensor {
+    /**
+     * Evaluates {@link Sensor#getLikelihood(double, double)} at many points at once. Each <code>out[i]</code> must equal
+     * <code>getLikelihood(xs[i], ys[i])</code>.
+     *
+     * @param xs  The X coordinates of the points.
+     * @param ys  The Y coordinates of the points, the same length as <code>xs</code>.
+     * @param out Receives the likelihoods; at least as long as <code>xs</code>.
+     */
+    void getLikelihoods(double[] xs, double[] ys, double[] out);
+
+    /**
+     * Evaluates {@link Sensor#getWeight(double, double)} at many points at once, as with
+     * {@link BatchSensor#getLikelihoods(double[], double[], double[])}.
+     *
+     * @param xs  The X coordinates of the points.
+     * @param ys  The Y coordinates of the points, the same length as <code>xs</code>.
+     * @param out Receives the weights; at least as long as <code>xs</code>.
+     */
+    void getWeights(double[] xs, double[] ys, double[] out);
+}
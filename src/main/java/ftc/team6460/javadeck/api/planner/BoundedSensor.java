@@ -0,0 +1,44 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner;
+
+/**
+ * A sensor that can bound its likelihood over an area. {@link WeightedAveragePositionIntegrator} checks for this
+ * interface, and uses the bound to skip parts of its finest search levels that cannot beat what it has already found
+ * (see {@link WeightedAveragePositionIntegrator#setRefinement(int, double)}); the tighter the bound, the less it
+ * searches. Sensors that do not implement it are never pruned on.
+ */
+public interface BoundedSensor extends Sensor {
+    /**
+     * Returns an upper bound on {@link Sensor#getLikelihood(double, double)} over a rectangle of the field.
+     *
+     * @param minX The low X edge of the rectangle.
+     * @param minY The low Y edge of the rectangle.
+     * @param maxX The high X edge of the rectangle.
+     * @param maxY The high Y edge of the rectangle.
+     * @return A value no less than the likelihood at any point of the rectangle, or positive infinity if unknown.
+     */
+    double getLikelihoodBound(double minX, double minY, double maxX, double maxY);
+}
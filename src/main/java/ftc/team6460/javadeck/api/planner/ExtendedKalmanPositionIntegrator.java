@@ -0,0 +1,341 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Tracks the robot's position with an extended Kalman filter over x, y and heading, for tracking at high rates where a
+ * search per cycle would be too slow. Motion comes from {@link RobotDrive} odometry, or from
+ * {@link ExtendedKalmanPositionIntegrator#predict(double, double, double)}; measurements come from the sensors, each of
+ * whose hotspots is read as a measurement of position and heading (see
+ * {@link ExtendedKalmanPositionIntegrator#getCandidates(double)}). If the sensors stop agreeing with the estimate, the
+ * filter can hand off to another integrator, such as {@link WeightedAveragePositionIntegrator}, to find the robot again.
+ * <p>
+ * The state and covariance are fixed-size primitive arrays, and predictions and measurement updates allocate nothing.
+ * A full cycle through {@link ExtendedKalmanPositionIntegrator#getCandidates(double)} still allocates its result and
+ * iterators over the sensors and their hotspots, and relocalising allocates whatever the relocaliser does. Updates are
+ * serialized; the latest estimate may be read from any thread without locking, through
+ * {@link ExtendedKalmanPositionIntegrator#getEstimate(double[])} or
+ * {@link ExtendedKalmanPositionIntegrator#getPosition()}.
+ */
+public class ExtendedKalmanPositionIntegrator implements PositionIntegrator {
+    private final Set<Sensor> sensors = new CopyOnWriteArraySet<>();
+
+    /*
+     * The state (x, y, theta), and its covariance, row-major. Only touched while holding this object's lock.
+     */
+    private final /*mutable*/ double[] state = new double[3];
+    private final /*mutable*/ double[] cov = new double[9];
+    // scratch space for a gain
+    private final /*mutable*/ double[] gain = new double[3];
+
+    /*
+     * The last published estimate, as a sequence lock: the writer makes seq odd, writes the fields, then makes it even
+     * again, and readers retry until they see the same even seq before and after reading.
+     */
+    private volatile int seq = 0;
+    private volatile double pubX, pubY, pubTheta, pubVarX, pubVarY, pubVarTheta;
+
+    /*
+     * Sensors are linearized around each hotspot by probing their likelihood PROBE_STEP either side of it (PROBE_THETA
+     * radians for heading), and fitting a gaussian to the logarithms.
+     */
+    private static final double PROBE_STEP = 0.05;
+    private static final double PROBE_THETA = 0.05;
+    // measurements whose squared innovation exceeds this many variances are taken to be outliers
+    private static final double GATE = 9;
+
+    // see setDrive
+    private final Odometry odometry = new Odometry();
+
+    // relocalisation; see setRelocaliser
+    private PositionIntegrator relocaliser;
+    private double relocaliseBelow;
+    private double relocalisedPositionSigma, relocalisedThetaSigma;
+
+    /**
+     * Creates a filter with a known starting position.
+     *
+     * @param sensors       The sensors to take measurements from.
+     * @param start         The starting estimate.
+     * @param positionSigma The standard deviation of the starting estimate's X and Y.
+     * @param thetaSigma    The standard deviation of the starting estimate's heading, in radians.
+     */
+    public ExtendedKalmanPositionIntegrator(Collection<Sensor> sensors, RobotPosition start, double positionSigma, double thetaSigma) {
+        this.sensors.addAll(sensors);
+        reset(start, positionSigma, thetaSigma);
+    }
+
+    /**
+     * Sets the drive whose reported motion is fed to the filter on each call to
+     * {@link ExtendedKalmanPositionIntegrator#getCandidates(double)}, with process noise in proportion to the distance and
+     * angle moved.
+     *
+     * @param drive            The drive, or null to take motion only from
+     *                         {@link ExtendedKalmanPositionIntegrator#predict(double, double, double)}.
+     * @param translationNoise The standard deviation of the position noise, per unit of distance moved.
+     * @param rotationNoise    The standard deviation of the heading noise, per radian turned.
+     */
+    public synchronized void setDrive(RobotDrive drive, double translationNoise, double rotationNoise) {
+        odometry.setDrive(drive, translationNoise, rotationNoise);
+    }
+
+    /**
+     * Sets an integrator to fall back on when the sensors stop agreeing with the estimate. When the weighted average
+     * likelihood of the estimate falls below <code>minConfidence</code>, the relocaliser's best candidate replaces the
+     * estimate.
+     *
+     * @param relocaliser   The integrator to search with, or null to never relocalise.
+     * @param minConfidence The weighted average likelihood below which to relocalise.
+     * @param positionSigma The standard deviation to give the X and Y of a relocalised estimate.
+     * @param thetaSigma    The standard deviation to give the heading of a relocalised estimate, in radians.
+     */
+    public synchronized void setRelocaliser(PositionIntegrator relocaliser, double minConfidence, double positionSigma, double thetaSigma) {
+        this.relocaliser = relocaliser;
+        this.relocaliseBelow = minConfidence;
+        this.relocalisedPositionSigma = positionSigma;
+        this.relocalisedThetaSigma = thetaSigma;
+    }
+
+    /**
+     * Replaces the estimate.
+     *
+     * @param position      The new estimate.
+     * @param positionSigma The standard deviation of its X and Y.
+     * @param thetaSigma    The standard deviation of its heading, in radians.
+     */
+    public synchronized void reset(RobotPosition position, double positionSigma, double thetaSigma) {
+        state[0] = position.getX();
+        state[1] = position.getY();
+        state[2] = position.getTheta();
+        Arrays.fill(cov, 0);
+        cov[0] = positionSigma * positionSigma;
+        cov[4] = positionSigma * positionSigma;
+        cov[8] = thetaSigma * thetaSigma;
+        publish0();
+    }
+
+    /**
+     * Moves the estimate by a motion relative to the robot: <code>forward</code> along its heading, <code>left</code>
+     * across it, then turning by <code>dTheta</code>. The motion's noise is given as standard deviations.
+     */
+    public synchronized void predict(double forward, double left, double dTheta, double positionSigma, double thetaSigma) {
+        predict0(forward, left, dTheta, positionSigma * positionSigma, thetaSigma * thetaSigma);
+        publish0();
+    }
+
+    /**
+     * As {@link ExtendedKalmanPositionIntegrator#predict(double, double, double, double, double)}, with noise from the
+     * drive's noise parameters.
+     */
+    public synchronized void predict(double forward, double left, double dTheta) {
+        predict(forward, left, dTheta, odometry.getPositionSigma(forward, left), odometry.getThetaSigma(dTheta));
+    }
+
+    /**
+     * Runs one filter cycle: feeds the drive's motion since the last call, then each sensor's hotspots as measurements,
+     * relocalising if needed. Returns the estimate as a single candidate, with strength equal to the weighted average of
+     * the sensors' likelihoods there, or no candidate if that is not above <code>minCorr</code>.
+     */
+    @Override
+    public synchronized List<LocationCandidate> getCandidates(double minCorr) {
+        if (odometry.update()) {
+            double forward = odometry.getForward(), left = odometry.getLeft(), dTheta = odometry.getDTheta();
+            double posSigma = odometry.getPositionSigma(forward, left);
+            double thetaSigma = odometry.getThetaSigma(dTheta);
+            predict0(forward, left, dTheta, posSigma * posSigma, thetaSigma * thetaSigma);
+        }
+        for (Sensor s : sensors) {
+            RobotPosition hotspot = nearestHotspot0(s);
+            if (hotspot != null) {
+                measure0(s, hotspot);
+            }
+        }
+        double strength = getStrength0();
+        if (strength < relocaliseBelow && relocaliser != null) {
+            List<LocationCandidate> found = relocaliser.getCandidates(minCorr);
+            if (!found.isEmpty()) {
+                LocationCandidate best = Collections.max(found, new LocationCandidate.Comparator());
+                reset(best.getPosition(), relocalisedPositionSigma, relocalisedThetaSigma);
+                strength = getStrength0();
+            }
+        }
+        publish0();
+        if (strength > minCorr) {
+            return Collections.singletonList(new LocationCandidate(new ImmutableRobotPosition(state[0], state[1], state[2]), strength));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reads the latest estimate without locking.
+     *
+     * @param out Receives x, y, theta, and the variances of x, y and theta; at least 6 long.
+     */
+    public void getEstimate(double[] out) {
+        int before;
+        do {
+            before = seq;
+            out[0] = pubX;
+            out[1] = pubY;
+            out[2] = pubTheta;
+            out[3] = pubVarX;
+            out[4] = pubVarY;
+            out[5] = pubVarTheta;
+        } while ((before & 1) != 0 || before != seq);
+    }
+
+    /**
+     * Returns the latest estimate, read without locking.
+     */
+    public ImmutableRobotPosition getPosition() {
+        int before;
+        double x, y, theta;
+        do {
+            before = seq;
+            x = pubX;
+            y = pubY;
+            theta = pubTheta;
+        } while ((before & 1) != 0 || before != seq);
+        return new ImmutableRobotPosition(x, y, theta);
+    }
+
+    private void publish0() {
+        seq++;
+        pubX = state[0];
+        pubY = state[1];
+        pubTheta = state[2];
+        pubVarX = cov[0];
+        pubVarY = cov[4];
+        pubVarTheta = cov[8];
+        seq++;
+    }
+
+    /*
+     * x' = x + f cos(t) - l sin(t), y' = y + f sin(t) + l cos(t), t' = t + dt; P' = F P F^T + Q, with F the identity
+     * plus the derivatives of x' and y' by t in the third column.
+     */
+    private void predict0(double forward, double left, double dTheta, double posVar, double thetaVar) {
+        double c = Math.cos(state[2]), s = Math.sin(state[2]);
+        double a = -forward * s - left * c, b = forward * c - left * s;
+        state[0] += forward * c - left * s;
+        state[1] += forward * s + left * c;
+        state[2] = Math.IEEEremainder(state[2] + dTheta, 2 * Math.PI);
+        double[] p = cov;
+        // F P
+        double p00 = p[0] + a * p[6], p01 = p[1] + a * p[7], p02 = p[2] + a * p[8];
+        double p10 = p[3] + b * p[6], p11 = p[4] + b * p[7], p12 = p[5] + b * p[8];
+        // (F P) F^T
+        p[0] = p00 + p02 * a;
+        p[1] = p01 + p02 * b;
+        p[3] = p10 + p12 * a;
+        p[4] = p11 + p12 * b;
+        p[2] = p02;
+        p[5] = p12;
+        p[6] = p[6] + a * p[8];
+        p[7] = p[7] + b * p[8];
+        p[0] += posVar;
+        p[4] += posVar;
+        p[8] += thetaVar;
+    }
+
+    // the sensor's hotspot closest to the estimate, or null
+    private RobotPosition nearestHotspot0(Sensor s) {
+        RobotPosition best = null;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (RobotPosition h : s.getPossibleHotspots()) {
+            double d = Math.hypot(h.getX() - state[0], h.getY() - state[1]);
+            if (d < bestDist) {
+                bestDist = d;
+                best = h;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Reads a sensor as up to three scalar measurements around a hotspot, one per axis. Along each, the log-likelihood at
+     * the hotspot and PROBE_STEP either side is fitted with a parabola, i.e. the likelihood with a gaussian, whose peak is
+     * the measurement and whose width is its standard deviation, widened further for sensors of weight under 1. An axis
+     * along which the sensor is flat or curves the wrong way tells nothing, and is skipped.
+     */
+    private void measure0(Sensor s, RobotPosition h) {
+        double x = h.getX(), y = h.getY(), t = h.getTheta();
+        double w = s.getWeight(x, y);
+        if (!(w > 0)) {
+            return;
+        }
+        double l0 = Math.log(s.getLikelihood(x, y));
+        update0(0, x, l0, Math.log(s.getLikelihood(x - PROBE_STEP, y)), Math.log(s.getLikelihood(x + PROBE_STEP, y)), PROBE_STEP, w);
+        update0(1, y, l0, Math.log(s.getLikelihood(x, y - PROBE_STEP)), Math.log(s.getLikelihood(x, y + PROBE_STEP)), PROBE_STEP, w);
+        double o0 = Math.log(s.getOrientationLikelihood(x, y, t));
+        update0(2, t, o0, Math.log(s.getOrientationLikelihood(x, y, t - PROBE_THETA)),
+                Math.log(s.getOrientationLikelihood(x, y, t + PROBE_THETA)), PROBE_THETA, w);
+    }
+
+    private void update0(int k, double at, double l0, double lMinus, double lPlus, double h, double weight) {
+        double curvature = 2 * l0 - lMinus - lPlus;
+        if (!(curvature > 0) || Double.isInfinite(curvature)) {
+            return;
+        }
+        double z = at + h * (lPlus - lMinus) / (2 * curvature);
+        double r = h * h / (curvature * weight);
+        double innovation = z - state[k];
+        if (k == 2) {
+            innovation = Math.IEEEremainder(innovation, 2 * Math.PI);
+        }
+        double sVar = cov[k * 4] + r;
+        if (innovation * innovation > GATE * sVar) {
+            return;
+        }
+        // K = P H^T / S, where H picks out component k; then x += K y and P -= K H P
+        for (int i = 0; i < 3; i++) {
+            gain[i] = cov[i * 3 + k] / sVar;
+        }
+        for (int i = 0; i < 3; i++) {
+            state[i] += gain[i] * innovation;
+        }
+        state[2] = Math.IEEEremainder(state[2], 2 * Math.PI);
+        double r0 = cov[k], r1 = cov[3 + k], r2 = cov[6 + k];
+        for (int i = 0; i < 3; i++) {
+            cov[i * 3] -= gain[i] * r0;
+            cov[i * 3 + 1] -= gain[i] * r1;
+            cov[i * 3 + 2] -= gain[i] * r2;
+        }
+    }
+
+    // the weighted average likelihood of the sensors at the estimate, as WeightedAveragePositionIntegrator scores a point
+    private double getStrength0() {
+        double sum = 0, weightSum = 0;
+        for (Sensor s : sensors) {
+            double w = s.getWeight(state[0], state[1]);
+            sum += w * s.getLikelihood(state[0], state[1]);
+            weightSum += w;
+        }
+        return sum / weightSum;
+    }
+}
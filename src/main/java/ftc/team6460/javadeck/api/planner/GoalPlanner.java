@@ -25,6 +25,9 @@
 package ftc.team6460.javadeck.api.planner;
 
 import ftc.team6460.javadeck.api.planner.geom.Field;
+import ftc.team6460.javadeck.api.planner.geom.KShortestPaths;
+import ftc.team6460.javadeck.api.planner.geom.Point2D;
+import ftc.team6460.javadeck.api.planner.geom.Waypoint;
 import java8.util.stream.StreamSupport;
 
 import java.util.*;
@@ -41,6 +44,15 @@ public class GoalPlanner<T> {
     private final PositionIntegrator integrator;
     private final Field field;
     private final double minCorr;
+    // only used from runLoop, and re-used for every route.
+    private final MovePlan plan = new MovePlan();
+    // the route index each move of the plan ends at; see Field#planRoute. Only used from runLoop.
+    private int[] moveEnds = new int[16];
+
+    /**
+     * The number of alternative routes tried when an obstacle blocks the robot, before a goal is given up on.
+     */
+    public static final int MAX_ALTERNATIVE_ROUTES = 8;
 
     /**
      * Creates a new goal planner
@@ -97,7 +109,7 @@ public class GoalPlanner<T> {
             try {
                 Goal<T> goal = GoalPlanner.this.getBestGoal();
                 LocationCandidate ourPosition = StreamSupport.stream(GoalPlanner.this.integrator.getCandidates(minCorr))
-                        .reduce(null, (c1, c2) -> c1.getCorrelationStrength() >= c2.getCorrelationStrength() ? c1 : c2);
+                        .reduce(null, (c1, c2) -> c1 != null && c1.getCorrelationStrength() >= c2.getCorrelationStrength() ? c1 : c2);
                 if (ourPosition == null) {
                     // sleep a second
                     try {
@@ -108,14 +120,18 @@ public class GoalPlanner<T> {
                     continue;
                 }
 
+                if (!GoalPlanner.this.field.isReachable(ourPosition.getPosition(), goal.getLocation())) {
+                    // cheap check, so that goals behind walls do not cost a full search each time
+                    GoalPlanner.this.removeGoal(goal);
+                    continue;
+                }
+
                 try {
-                    List<RelativePosition> steps = GoalPlanner.this.field.findPath(ourPosition.getPosition(),
-                            goal.getLocation());
-                    for (RelativePosition rp : steps) {
-                        drive.move(rp, false);
-                    }
+                    Waypoint st = field.getNearest(Point2D.fromRobotPosition(ourPosition.getPosition()));
+                    Waypoint fin = field.getNearest(Point2D.fromRobotPosition(goal.getLocation()));
+                    followRoutes(field.findPaths(st, fin), goal);
                     LocationCandidate ourPositionAfter = StreamSupport.stream(GoalPlanner.this.integrator.getCandidates(minCorr))
-                            .reduce(null, (c1, c2) -> c1.getCorrelationStrength() >= c2.getCorrelationStrength() ? c1 : c2);
+                            .reduce(null, (c1, c2) -> c1 != null && c1.getCorrelationStrength() >= c2.getCorrelationStrength() ? c1 : c2);
                     if (ourPositionAfter == null) {
                         goal.act(drive.getCurrentPosition(), GoalPlanner.this.currentState, GoalPlanner.this);
                     } else {
@@ -141,6 +157,50 @@ public class GoalPlanner<T> {
 
 
 
+    /**
+     * Drives along the first route, switching to the next suitable alternative whenever an obstacle blocks the way.
+     * An alternative is suitable if it passes through a waypoint of the blocked route that the robot has reached or
+     * driven straight past, and leaves it by a different connection, so the robot never has to back-track.
+     */
+    private void followRoutes(KShortestPaths routes, Goal<T> goal) throws RobotHardwareException, ObstacleException {
+        List<Waypoint> route = routes.next();
+        int from = 0;
+        for (int attempt = 0; ; attempt++) {
+            if (moveEnds.length < route.size() - from + 1) {
+                moveEnds = new int[route.size() + 1];
+            }
+            field.planRoute(route, from, drive.getCurrentPosition(), goal.getLocation(), plan, moveEnds);
+            try {
+                drive.move(plan, false);
+                return;
+            } catch (ObstacleException e) {
+                int done = drive.getCompletedMoves();
+                // the waypoint the blocked move was heading for, and the last one actually reached
+                int blocked = moveEnds[done];
+                int reached = (done > 0) ? moveEnds[done - 1] : from;
+                if (attempt >= MAX_ALTERNATIVE_ROUTES || blocked >= route.size()) {
+                    throw e;
+                }
+                // branch as late as possible: from the waypoint before the blocked one, else from an earlier one
+                List<Waypoint> alternative = null;
+                while (alternative == null && routes.hasNext()) {
+                    List<Waypoint> r = routes.next();
+                    for (int b = blocked - 1; b >= reached && b >= 0 && alternative == null; b--) {
+                        int i = r.indexOf(route.get(b));
+                        if (i >= 0 && i + 1 < r.size() && !r.get(i + 1).equals(route.get(b + 1))) {
+                            alternative = r;
+                            from = i;
+                        }
+                    }
+                }
+                if (alternative == null) {
+                    throw e;
+                }
+                route = alternative;
+            }
+        }
+    }
+
     private SynchronousQueue<Object> newGoalNotifier = new SynchronousQueue<>();
 
     public synchronized void stop() {
@@ -0,0 +1,283 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Tracks the robot's position with a particle filter (Monte Carlo localisation) over x, y and heading. Each call to
+ * {@link MonteCarloPositionIntegrator#getCandidates(double)} moves the particles by the motion reported by the drive
+ * since the last call, weights them by the sensors, groups them into clusters that become the candidates, and resamples
+ * them. Unlike {@link WeightedAveragePositionIntegrator}, the cost of a call is proportional to the number of particles,
+ * not to the area of the field.
+ * <p>
+ * Particles are kept in primitive arrays that are allocated once, so that a call allocates nothing but its result.
+ * Calls are serialized; this class is otherwise not meant to be shared between threads.
+ */
+public class MonteCarloPositionIntegrator implements PositionIntegrator {
+    private final Set<Sensor> sensors = new CopyOnWriteArraySet<>();
+
+    private final double fieldX;
+    private final double fieldY;
+    private final int n;
+    private final Random random;
+
+    /*
+     * Particle i is at (px[i], py[i]) facing pt[i], with normalized weight pw[i]; score[i] is the weighted average
+     * likelihood from the last update, as reported in candidates. The n* arrays receive the particles while resampling.
+     */
+    private final /*mutable*/ double[] px, py, pt, pw, score;
+    private final /*mutable*/ double[] nx, ny, nt;
+    // scratch space for sensor batches
+    private final /*mutable*/ double[] likelihoods, weights, sums, weightSums;
+    // the cluster each particle has been put in, or -1
+    private final /*mutable*/ int[] cluster;
+
+    /*
+     * Particles within this distance of a cluster's best particle join the cluster, and at most MAX_CLUSTERS are reported.
+     */
+    private final double clusterRadius;
+    private static final int MAX_CLUSTERS = 8;
+
+    /*
+     * Resampling happens only once the effective number of particles falls below this fraction of n. Resampled particles
+     * are then jittered by ROUGHENING times clusterRadius, and ROUGHENING_THETA radians, so that a robot standing still does
+     * not collapse them onto a few points.
+     */
+    private static final double RESAMPLE_THRESHOLD = 0.5;
+    private static final double ROUGHENING = 0.1;
+    private static final double ROUGHENING_THETA = 0.1;
+
+    // see setDrive
+    private final Odometry odometry = new Odometry();
+
+    public MonteCarloPositionIntegrator(Collection<Sensor> sensors, double fieldX, double fieldY) {
+        this(sensors, fieldX, fieldY, 2000, 0.25, new Random());
+    }
+
+    /**
+     * Creates a particle filter with particles spread evenly over the field and all headings.
+     *
+     * @param sensors       The sensors to weight particles by.
+     * @param fieldX        The size of the field in the X direction.
+     * @param fieldY        The size of the field in the Y direction.
+     * @param particles     The number of particles.
+     * @param clusterRadius The distance within which particles count as the same candidate.
+     * @param random        The source of randomness for spreading, moving and resampling particles.
+     */
+    public MonteCarloPositionIntegrator(Collection<Sensor> sensors, double fieldX, double fieldY, int particles,
+                                        double clusterRadius, Random random) {
+        this.sensors.addAll(sensors);
+        this.fieldX = fieldX;
+        this.fieldY = fieldY;
+        this.n = particles;
+        this.clusterRadius = clusterRadius;
+        this.random = random;
+        px = new double[n];
+        py = new double[n];
+        pt = new double[n];
+        pw = new double[n];
+        score = new double[n];
+        nx = new double[n];
+        ny = new double[n];
+        nt = new double[n];
+        likelihoods = new double[n];
+        weights = new double[n];
+        sums = new double[n];
+        weightSums = new double[n];
+        cluster = new int[n];
+        scatter0();
+    }
+
+    /**
+     * Sets the drive whose reported motion moves the particles between calls. The motion is taken relative to the
+     * robot, so it moves every particle the same way relative to its own heading, with gaussian noise added in proportion
+     * to the distance and angle moved.
+     *
+     * @param drive            The drive, or null to leave particles in place apart from noise.
+     * @param translationNoise The standard deviation of the position noise, per unit of distance moved.
+     * @param rotationNoise    The standard deviation of the heading noise, per radian turned.
+     */
+    public synchronized void setDrive(RobotDrive drive, double translationNoise, double rotationNoise) {
+        odometry.setDrive(drive, translationNoise, rotationNoise);
+    }
+
+    /**
+     * Spreads the particles evenly over the field again, forgetting where the robot was thought to be.
+     */
+    public synchronized void reset() {
+        scatter0();
+    }
+
+    /**
+     * Returns a list of clusters of particles, in no particular order. Each candidate is the weighted mean position and
+     * heading of a cluster, with strength equal to the mean, by particle weight, of
+     * its particles' scores: each the sensors' weighted geometric mean of position likelihood times heading likelihood.
+     */
+    @Override
+    public synchronized List<LocationCandidate> getCandidates(double minCorr) {
+        predict0();
+        if (!weigh0()) {
+            // no particle is anywhere the sensors agree with; start over rather than resample noise
+            scatter0();
+            weigh0();
+        }
+        List<LocationCandidate> candidates = cluster0(minCorr);
+        double squares = 0;
+        for (int i = 0; i < n; i++) {
+            squares += pw[i] * pw[i];
+        }
+        if (1 / squares < RESAMPLE_THRESHOLD * n) {
+            resample0();
+        }
+        return candidates;
+    }
+
+    private void scatter0() {
+        for (int i = 0; i < n; i++) {
+            px[i] = random.nextDouble() * fieldX;
+            py[i] = random.nextDouble() * fieldY;
+            pt[i] = (random.nextDouble() * 2 - 1) * Math.PI;
+            pw[i] = 1.0 / n;
+        }
+    }
+
+    // moves each particle by the drive's motion since the last call, in that particle's frame
+    private void predict0() {
+        if (!odometry.update()) {
+            return;
+        }
+        double forward = odometry.getForward(), left = odometry.getLeft(), dTheta = odometry.getDTheta();
+        double posSigma = odometry.getPositionSigma(forward, left);
+        double thetaSigma = odometry.getThetaSigma(dTheta);
+        for (int i = 0; i < n; i++) {
+            double c = Math.cos(pt[i]), s = Math.sin(pt[i]);
+            double x = px[i] + forward * c - left * s + random.nextGaussian() * posSigma;
+            double y = py[i] + forward * s + left * c + random.nextGaussian() * posSigma;
+            px[i] = Math.min(fieldX, Math.max(0, x));
+            py[i] = Math.min(fieldY, Math.max(0, y));
+            pt[i] = Math.IEEEremainder(pt[i] + dTheta + random.nextGaussian() * thetaSigma, 2 * Math.PI);
+        }
+    }
+
+    /*
+     * Scores each particle by the weighted geometric mean, over the sensors, of position likelihood times heading
+     * likelihood, and multiplies it into the particle's weight. Unlike the arithmetic mean used by
+     * WeightedAveragePositionIntegrator, a sensor that knows nothing about position (or heading) then leaves the others'
+     * evidence undiluted. Returns false, leaving weights as they were, if every particle scored zero.
+     */
+    private boolean weigh0() {
+        Arrays.fill(sums, 0);
+        Arrays.fill(weightSums, 0);
+        for (Sensor s : sensors) {
+            SensorBatches.getWeights(s, px, py, weights);
+            SensorBatches.getLikelihoods(s, px, py, likelihoods);
+            for (int i = 0; i < n; i++) {
+                if (weights[i] > 0) {
+                    double l = likelihoods[i] * s.getOrientationLikelihood(px[i], py[i], pt[i]);
+                    sums[i] += weights[i] * Math.log(l);
+                    weightSums[i] += weights[i];
+                }
+            }
+        }
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            double sc = Math.exp(sums[i] / weightSums[i]);
+            score[i] = (sc > 0) ? sc : 0;
+            total += pw[i] * score[i];
+        }
+        if (!(total > 0)) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            pw[i] = pw[i] * score[i] / total;
+        }
+        return true;
+    }
+
+    /*
+     * Greedily groups particles: the heaviest particle not yet in a cluster starts a new one, which takes every particle
+     * not yet in a cluster within clusterRadius of it.
+     */
+    private List<LocationCandidate> cluster0(double minCorr) {
+        List<LocationCandidate> candidates = new ArrayList<>();
+        Arrays.fill(cluster, -1);
+        double r2 = clusterRadius * clusterRadius;
+        for (int c = 0; c < MAX_CLUSTERS; c++) {
+            int seed = -1;
+            for (int i = 0; i < n; i++) {
+                if (cluster[i] < 0 && pw[i] > 0 && (seed < 0 || pw[i] > pw[seed])) {
+                    seed = i;
+                }
+            }
+            if (seed < 0) {
+                break;
+            }
+            double w = 0, x = 0, y = 0, cos = 0, sin = 0, sc = 0;
+            for (int i = 0; i < n; i++) {
+                double dx = px[i] - px[seed], dy = py[i] - py[seed];
+                if (cluster[i] < 0 && dx * dx + dy * dy <= r2) {
+                    cluster[i] = c;
+                    w += pw[i];
+                    x += pw[i] * px[i];
+                    y += pw[i] * py[i];
+                    cos += pw[i] * Math.cos(pt[i]);
+                    sin += pw[i] * Math.sin(pt[i]);
+                    sc += pw[i] * score[i];
+                }
+            }
+            double strength = sc / w;
+            if (strength > minCorr) {
+                candidates.add(new LocationCandidate(new ImmutableRobotPosition(x / w, y / w, Math.atan2(sin, cos)), strength));
+            }
+        }
+        return candidates;
+    }
+
+    // low-variance (systematic) resampling: one random offset, then n evenly spaced picks along the cumulative weights;
+    // see ROUGHENING
+    private void resample0() {
+        double step = 1.0 / n;
+        double u = random.nextDouble() * step;
+        double c = pw[0];
+        int i = 0;
+        for (int m = 0; m < n; m++) {
+            double target = u + m * step;
+            while (target > c && i < n - 1) {
+                i++;
+                c += pw[i];
+            }
+            double jitter = ROUGHENING * clusterRadius;
+            nx[m] = Math.min(fieldX, Math.max(0, px[i] + random.nextGaussian() * jitter));
+            ny[m] = Math.min(fieldY, Math.max(0, py[i] + random.nextGaussian() * jitter));
+            nt[m] = Math.IEEEremainder(pt[i] + random.nextGaussian() * ROUGHENING_THETA, 2 * Math.PI);
+        }
+        System.arraycopy(nx, 0, px, 0, n);
+        System.arraycopy(ny, 0, py, 0, n);
+        System.arraycopy(nt, 0, pt, 0, n);
+        Arrays.fill(pw, step);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, reusable sequence of relative moves, stored as (distance, theta) pairs in a single <code>double[]</code>.
+ * Moves are appended by target location, tracking the resulting robot position as primitives, so building a plan does not
+ * allocate once its backing array is large enough. {@link RelativePosition} objects are only created when moves are read
+ * through {@link MovePlan#get(int)}, {@link MovePlan#iterator()} or {@link MovePlan#asList()}.
+ * <p>
+ * This class is not thread-safe. Re-use one instance per planning thread by calling {@link MovePlan#reset(RobotPosition)}.
+ */
+public final class MovePlan implements Iterable<RelativePosition> {
+    private double[] moves;
+    private int size;
+
+    // the position reached after the last move
+    private double x, y, theta;
+
+    public MovePlan() {
+        this(16);
+    }
+
+    /**
+     * @param capacity The number of moves to allocate room for initially.
+     */
+    public MovePlan(int capacity) {
+        moves = new double[Math.max(1, capacity) * 2];
+    }
+
+    /**
+     * Empties this plan, keeping its storage, and sets the position that the first move starts from.
+     */
+    public void reset(RobotPosition start) {
+        reset(start.getX(), start.getY(), start.getTheta());
+    }
+
+    /**
+     * Empties this plan, keeping its storage, and sets the position that the first move starts from.
+     */
+    public void reset(double x, double y, double theta) {
+        this.size = 0;
+        this.x = x;
+        this.y = y;
+        this.theta = theta;
+    }
+
+    /**
+     * Appends a move from the current end of this plan to a location, as with {@link RelativePosition#between(RobotPosition, RobotPosition)}.
+     *
+     * @param x The X position to travel to, in meters.
+     * @param y The Y position to travel to, in meters.
+     */
+    public void moveTo(double x, double y) {
+        double dist = Math.hypot(this.x - x, this.y - y);
+        double thetaRaw = Math.atan2(y - this.y, x - this.x);
+        add(dist, Math.IEEEremainder(this.theta - thetaRaw, 2 * Math.PI));
+    }
+
+    /**
+     * Appends a move, as with {@link RelativePosition#RelativePosition(double, double)}.
+     *
+     * @param distance The distance, in meters
+     * @param theta    An angle in radians, between -pi and pi, where positive values are right of face direction and negative values are left.
+     */
+    public void add(double distance, double theta) {
+        if (size * 2 == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[size * 2] = distance;
+        moves[size * 2 + 1] = theta;
+        size++;
+        // as per RelativePosition#apply
+        this.theta = this.theta - theta;
+        this.x += distance * Math.cos(this.theta);
+        this.y += distance * Math.sin(this.theta);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the distance of a move, in meters.
+     */
+    public double getDistance(int index) {
+        checkIndex(index);
+        return moves[index * 2];
+    }
+
+    /**
+     * Returns the heading of a move, as per {@link RelativePosition#getTheta()}.
+     */
+    public double getTheta(int index) {
+        checkIndex(index);
+        return moves[index * 2 + 1];
+    }
+
+    /**
+     * Returns a move as a new {@link RelativePosition}.
+     */
+    public RelativePosition get(int index) {
+        return new RelativePosition(getDistance(index), getTheta(index));
+    }
+
+    /**
+     * Returns the X position reached at the end of this plan.
+     */
+    public double getEndX() {
+        return x;
+    }
+
+    /**
+     * Returns the Y position reached at the end of this plan.
+     */
+    public double getEndY() {
+        return y;
+    }
+
+    /**
+     * Returns the orientation reached at the end of this plan.
+     */
+    public double getEndTheta() {
+        return theta;
+    }
+
+    /**
+     * Returns a read-only list view of this plan. Its elements are created on access, and it reflects later changes to this plan.
+     */
+    public List<RelativePosition> asList() {
+        return new AbstractList<RelativePosition>() {
+            @Override
+            public RelativePosition get(int index) {
+                return MovePlan.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator that creates each move as it is reached.
+     */
+    @Override
+    public Iterator<RelativePosition> iterator() {
+        return new Iterator<RelativePosition>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public RelativePosition next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MovePlan{");
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "" : ", ").append('(').append(moves[i * 2]).append(", ").append(moves[i * 2 + 1]).append(')');
+        }
+        return sb.append('}').toString();
+    }
+}
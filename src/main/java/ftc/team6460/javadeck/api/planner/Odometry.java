@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner;
+
+/**
+ * Turns the positions reported by a {@link RobotDrive} into motions relative to the robot, with noise in proportion to
+ * the distance and angle moved, for the filters that track the robot between searches. Not thread-safe; its owner
+ * serializes calls.
+ */
+final class Odometry {
+    private RobotDrive drive;
+    private double translationNoise, rotationNoise;
+    private double lastX, lastY, lastTheta;
+
+    // the motion found by the last call to update
+    private double forward, left, dTheta;
+
+    /**
+     * Sets the drive to follow, and starts measuring motion from its current position.
+     *
+     * @param drive            The drive, or null to report no motion.
+     * @param translationNoise The standard deviation of the position noise, per unit of distance moved.
+     * @param rotationNoise    The standard deviation of the heading noise, per radian turned.
+     */
+    void setDrive(RobotDrive drive, double translationNoise, double rotationNoise) {
+        this.drive = drive;
+        this.translationNoise = translationNoise;
+        this.rotationNoise = rotationNoise;
+        if (drive != null) {
+            RobotPosition now = drive.getCurrentPosition();
+            lastX = now.getX();
+            lastY = now.getY();
+            lastTheta = now.getTheta();
+        }
+    }
+
+    /**
+     * Finds the drive's motion since the last call, as the distance moved forward along the old heading, the distance
+     * moved left across it, and the turn. Returns false, leaving the last motion in place, if there is no drive.
+     */
+    boolean update() {
+        RobotDrive drive = this.drive;
+        if (drive == null) {
+            return false;
+        }
+        RobotPosition now = drive.getCurrentPosition();
+        double dx = now.getX() - lastX, dy = now.getY() - lastY;
+        forward = dx * Math.cos(lastTheta) + dy * Math.sin(lastTheta);
+        left = -dx * Math.sin(lastTheta) + dy * Math.cos(lastTheta);
+        dTheta = Math.IEEEremainder(now.getTheta() - lastTheta, 2 * Math.PI);
+        lastX = now.getX();
+        lastY = now.getY();
+        lastTheta = now.getTheta();
+        return true;
+    }
+
+    double getForward() {
+        return forward;
+    }
+
+    double getLeft() {
+        return left;
+    }
+
+    double getDTheta() {
+        return dTheta;
+    }
+
+    // the standard deviation of the position noise of a motion
+    double getPositionSigma(double forward, double left) {
+        return translationNoise * Math.hypot(forward, left);
+    }
+
+    // the standard deviation of the heading noise of a turn
+    double getThetaSigma(double dTheta) {
+        return rotationNoise * Math.abs(dTheta);
+    }
+}
@@ -96,6 +96,15 @@ public abstract class RobotDrive implements Sensor, PositionIntegrator {
      */
     protected abstract void move0(RelativePosition travel, boolean suppressObstacles) throws RobotHardwareException, ObstacleException;
 
+    /**
+     * As {@link RobotDrive#move0(RelativePosition, boolean)}, for a move given as primitives. Used when running a
+     * {@link MovePlan}; the default wraps the move in a {@link RelativePosition}, so drives that run long plans should
+     * override it.
+     */
+    protected void move0(double distance, double theta, boolean suppressObstacles) throws RobotHardwareException, ObstacleException {
+        move0(new RelativePosition(distance, theta), suppressObstacles);
+    }
+
     protected RobotPosition currentPosition;
 
     public RobotDrive(RobotPosition currentPosition) {
@@ -126,6 +135,23 @@ public abstract class RobotDrive implements Sensor, PositionIntegrator {
      */
     protected abstract double calculateAngularDrift(RelativePosition travel);
 
+    /**
+     * As {@link RobotDrive#calculateDrift(RelativePosition)}, for a move given as primitives. Used when running a
+     * {@link MovePlan}; the default wraps the move in a {@link RelativePosition}, so drives that run long plans should
+     * override it.
+     */
+    protected double calculateDrift(double distance, double theta) {
+        return calculateDrift(new RelativePosition(distance, theta));
+    }
+
+    /**
+     * As {@link RobotDrive#calculateAngularDrift(RelativePosition)}, for a move given as primitives; see
+     * {@link RobotDrive#calculateDrift(double, double)}.
+     */
+    protected double calculateAngularDrift(double distance, double theta) {
+        return calculateAngularDrift(new RelativePosition(distance, theta));
+    }
+
     /**
      * Calculates the estimated time for this move.
      *
@@ -156,6 +182,44 @@ public abstract class RobotDrive implements Sensor, PositionIntegrator {
         this.currentPosition = travel.apply(currentPosition).materialize();
     }
 
+    /**
+     * Performs each move of a plan in turn, as per {@link RobotDrive#move(RelativePosition, boolean)}.
+     *
+     * @param plan              The moves to perform.
+     * @param suppressObstacles True if the robot should ignore obstacle collisions and complete these moves.
+     * @throws RobotHardwareException Thrown if hardware is inoperable, or a move cannot be performed on the current hardware.
+     * @throws ObstacleException      Thrown if an obstacle is collided with during operation. Later moves are not attempted.
+     */
+    public final void move(MovePlan plan, boolean suppressObstacles) throws RobotHardwareException, ObstacleException {
+        completedMoves = 0;
+        for (int i = 0; i < plan.size(); i++) {
+            double distance = plan.getDistance(i), theta = plan.getTheta(i);
+            try {
+                move0(distance, theta, suppressObstacles);
+            } catch (RobotHardwareException | ObstacleException e) {
+                this.weight = 0;
+                throw e;
+            }
+            collectedAngularDrift += calculateAngularDrift(distance, theta);
+            collectedDrift += calculateDrift(distance, theta);
+            // as per RelativePosition#apply, without the intermediate objects
+            double newTheta = currentPosition.getTheta() - theta;
+            this.currentPosition = new ImmutableRobotPosition(currentPosition.getX() + distance * Math.cos(newTheta),
+                    currentPosition.getY() + distance * Math.sin(newTheta), newTheta);
+            completedMoves = i + 1;
+        }
+    }
+
+    private volatile int completedMoves = 0;
+
+    /**
+     * Returns how many moves of the plan last passed to {@link RobotDrive#move(MovePlan, boolean)} were completed. After
+     * that method throws, this is the index of the move that failed.
+     */
+    public int getCompletedMoves() {
+        return completedMoves;
+    }
+
     @Override
     public List<LocationCandidate> getCandidates(double minCorr) {
         return Collections.singletonList(new LocationCandidate(this.currentPosition.materialize(), 1.00));
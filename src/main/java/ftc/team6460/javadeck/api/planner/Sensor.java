@@ -29,6 +29,13 @@ package ftc.team6460.javadeck.api.planner;
  *
  * Likelihoods do not need to form a probability distribution (i.e. sum or integrate to 1) over the field. For example,
  * if the sensor reading makes it certain that the robot is in a given area, the likelihoods for every point in that area should be 1.
+ * <p>
+ * Thread safety: a position integrator may evaluate {@link Sensor#getLikelihood(double, double)} and
+ * {@link Sensor#getWeight(double, double)} from several threads at once (see
+ * {@link WeightedAveragePositionIntegrator#setForkJoinPool(java.util.concurrent.ForkJoinPool)}). Both must therefore be
+ * safe to call concurrently, and must act as pure functions of their arguments for the duration of one integrator call:
+ * the same point must give the same value, whatever the order of calls. A sensor that takes new readings should only
+ * publish them between integrator calls.
  */
 public interface Sensor {
     /**
@@ -38,6 +45,9 @@ public interface Sensor {
      * Advanced implementations may adjust this value to indicate that the sensor may not be perfectly reliable
      * (for example, to describe a probability distribution for the error in a reading).
      *
+     * <p>
+     * This may be called from several threads at once; see the thread safety notes on {@link Sensor}.
+     *
      * @param x     The robot position, X.
      * @param y     The robot position, Y.
      * @return The likelihood to be at this point.
@@ -62,6 +72,9 @@ public interface Sensor {
      * Returns the "weight" of this sensor for a weighted average, at the specific location and orientation specified. For example, a sensor that
      * is known to be unreliable when near a wall, may return a lower than usual weight for locations near walls.
      *
+     * <p>
+     * This may be called from several threads at once; see the thread safety notes on {@link Sensor}.
+     *
      * @param x     The robot position, X.
      * @param y     The robot position, Y.
      * @return The sensor weight here.
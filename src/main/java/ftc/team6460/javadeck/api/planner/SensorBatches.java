@@ -0,0 +1,54 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner;
+
+/**
+ * Evaluates sensors at many points at once, through {@link BatchSensor} where a sensor implements it, and a point at a
+ * time otherwise.
+ */
+final class SensorBatches {
+    private SensorBatches() {
+    }
+
+    static void getLikelihoods(Sensor s, double[] xs, double[] ys, double[] out) {
+        if (s instanceof BatchSensor) {
+            ((BatchSensor) s).getLikelihoods(xs, ys, out);
+        } else {
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = s.getLikelihood(xs[i], ys[i]);
+            }
+        }
+    }
+
+    static void getWeights(Sensor s, double[] xs, double[] ys, double[] out) {
+        if (s instanceof BatchSensor) {
+            ((BatchSensor) s).getWeights(xs, ys, out);
+        } else {
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = s.getWeight(xs[i], ys[i]);
+            }
+        }
+    }
+}
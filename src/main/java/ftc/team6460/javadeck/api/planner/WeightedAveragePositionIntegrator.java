@@ -26,6 +26,8 @@ package ftc.team6460.javadeck.api.planner;
 
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Calculates the robot's most likely position(s) from a set of sensors. This class is partially thread-safe; see javadocs of specific methods.
@@ -53,7 +55,7 @@ public class WeightedAveragePositionIntegrator implements PositionIntegrator {
      */
     private final double islandRemainStrength;
 
-    private final double cX, cY;
+    private final int cX, cY;
 
     private static final double COARSE_SEARCH_STEP = 0.2;
 
@@ -65,6 +67,20 @@ public class WeightedAveragePositionIntegrator implements PositionIntegrator {
     // F F F F F
     private static final int FINE_STEP_SUBDIVISIONS = 9;
     private static final int FINE_STEPS_IN_EACH_DIRECTION = (int) (FINE_STEP_SUBDIVISIONS / 2);
+    private static final int FINE_CELLS = FINE_STEP_SUBDIVISIONS * FINE_STEP_SUBDIVISIONS;
+
+    // each refinement level below the fine grid splits a cell into REFINE_SUBDIVISIONS x REFINE_SUBDIVISIONS children,
+    // of which at most REFINE_BEAM are split again
+    private static final int REFINE_SUBDIVISIONS = 3;
+    private static final int REFINE_CELLS = REFINE_SUBDIVISIONS * REFINE_SUBDIVISIONS;
+    private static final int REFINE_BEAM = 4;
+    // a level that gains less than this is taken to mean the sensors cannot resolve any finer
+    private static final double REFINE_MIN_GAIN = 1e-9;
+
+    // headings are searched at HEADING_STEPS even steps around the circle, then refined HEADING_LEVELS times, each time
+    // trying a third of the last step either side of the best so far
+    private static final int HEADING_STEPS = 36;
+    private static final int HEADING_LEVELS = 8;
 
 
     private final double firstCoarseVal;
@@ -83,24 +99,83 @@ public class WeightedAveragePositionIntegrator implements PositionIntegrator {
         this.islandMinAbsolute = islandMinAbsolute;
         this.islandRemainStrength = islandRemainStrength;
         this.sensors.addAll(sensors);
+        headingWeights = new double[this.sensors.size()];
         firstCoarseVal = COARSE_SEARCH_STEP / FINE_STEP_SUBDIVISIONS * (Math.floor(FINE_STEP_SUBDIVISIONS / 2));
         this.fieldX = fieldX;
         int coarseX = (int) Math.ceil((this.fieldX - firstCoarseVal) / COARSE_SEARCH_STEP);
         this.fieldY = fieldY;
         int coarseY = (int) Math.ceil((this.fieldY - firstCoarseVal) / COARSE_SEARCH_STEP);
-        tiles = new Tile[coarseX][coarseY];
-        for (int i = 0; i < coarseX; i++) {
-            for (int j = 0; j < coarseY; j++) {
-                tiles[i][j] = new Tile(FINE_STEP_SUBDIVISIONS);
-            }
-        }
+        coarse = new double[coarseX * coarseY];
+        fine = new double[coarseX * coarseY * FINE_CELLS];
+        hasFine = new boolean[coarseX * coarseY];
+        fineComputed = new boolean[coarseX * coarseY];
+        fineMax = new double[coarseX * coarseY];
+        fineAvg = new double[coarseX * coarseY];
+        fineMaxPos = new int[coarseX * coarseY];
+        // one spare slot, so that a full queue is not mistaken for an empty one
+        fillQueue = new int[coarseX * coarseY + 1];
+        fillDepth = new int[coarseX * coarseY + 1];
+        prefetchTiles = new int[coarseX * coarseY];
+        prefetchQueued = new int[coarseX * coarseY];
+        windowStamp = new int[coarseX * coarseY];
+        windowTiles = new int[coarseX * coarseY];
         this.cX = coarseX;
         this.cY = coarseY;
     }
 
-    // if too slow, optimize as single-dim array
-    // tiles[coarseX][coarseY]
-    private final /*mutable*/ Tile[][] tiles;
+    /*
+     * The search grid, as flat arrays that are re-used between calls. Tile (x, y) is at index t = x * cY + y.
+     * Its fine value at offset (fx, fy), each from -FINE_STEPS_IN_EACH_DIRECTION to FINE_STEPS_IN_EACH_DIRECTION,
+     * is at fine[fineIndex(t, fx, fy)], and is only meaningful if hasFine[t].
+     */
+    private final /*mutable*/ double[] coarse;
+    private final /*mutable*/ double[] fine;
+    private final /*mutable*/ boolean[] hasFine;
+    // whether fine[] holds computed values for a tile. The values may be computed ahead of need, but a tile only counts
+    // as part of an island once hasFine is set.
+    private final /*mutable*/ boolean[] fineComputed;
+    // statistics of each tile's fine values, kept as they are computed; see computeFine
+    private final /*mutable*/ double[] fineMax;
+    private final /*mutable*/ double[] fineAvg;
+    private final /*mutable*/ int[] fineMaxPos;
+    // work queue for fillIn0: tile indices and their distance from the fill's start
+    private final /*mutable*/ int[] fillQueue;
+    private final /*mutable*/ int[] fillDepth;
+    // tiles queued by prefetchIslands0, ring after ring, and which tiles it has queued: those with prefetchQueued[t] == prefetchStamp
+    private final /*mutable*/ int[] prefetchTiles;
+    private final /*mutable*/ int[] prefetchQueued;
+    private int prefetchStamp = 0;
+
+    // null in sequential mode
+    private volatile ForkJoinPool pool;
+
+    // tracking mode; see setTracking
+    private boolean tracking = false;
+    private RobotDrive trackingDrive;
+    private double trackingWindow;
+    private double trackingMinConfidence;
+    private List<LocationCandidate> previous = Collections.emptyList();
+    private double lastDriveX, lastDriveY;
+    // tiles in the current tracking windows, and the ring around them, are those with windowStamp[t] == stamp;
+    // windowTiles lists the windows' tiles, then the ring's.
+    private final /*mutable*/ int[] windowStamp;
+    private final /*mutable*/ int[] windowTiles;
+    private int windowCount;
+    private int stamp = 0;
+    private boolean windowed = false;
+
+    // refinement below the fine grid; see setRefinement
+    private volatile int refineLevels = 0;
+    private volatile double refineMinStep = 0;
+    private final double[] frontierX = new double[REFINE_BEAM], frontierY = new double[REFINE_BEAM];
+    private final double[] childX = new double[REFINE_BEAM * REFINE_CELLS], childY = new double[REFINE_BEAM * REFINE_CELLS],
+            childV = new double[REFINE_BEAM * REFINE_CELLS];
+    private final boolean[] childTaken = new boolean[REFINE_BEAM * REFINE_CELLS];
+    private final double[] refined = new double[3];
+
+    // each sensor's weight at the point whose heading is being searched; see findHeading0. The sensors are fixed at
+    // construction, so this never needs resizing.
+    private final double[] headingWeights;
 
     /* Algorithm:
      * 1. Fill search array with Double.NaN
@@ -115,36 +190,369 @@ public class WeightedAveragePositionIntegrator implements PositionIntegrator {
      */
     @Override
     public List<LocationCandidate> getCandidates(double minCorr) {
-        double avg = fillCoarse0();
+        if (!tracking) {
+            return globalSearch0(minCorr);
+        }
+        double dx = 0, dy = 0;
+        if (trackingDrive != null) {
+            RobotPosition now = trackingDrive.getCurrentPosition();
+            dx = now.getX() - lastDriveX;
+            dy = now.getY() - lastDriveY;
+            lastDriveX = now.getX();
+            lastDriveY = now.getY();
+        }
+        List<LocationCandidate> candidates = previous.isEmpty() ? previous : trackWindows0(minCorr, dx, dy);
+        if (bestStrength(candidates) < trackingMinConfidence) {
+            // lost track; start over
+            candidates = globalSearch0(minCorr);
+        }
+        previous = candidates;
+        return candidates;
+    }
+
+    /**
+     * Turns on tracking mode. After a first full search, each call only searches a window around where the previous
+     * candidates are predicted to be now, moved by however far the drive's dead reckoning says the robot has moved since
+     * the last call. If no candidate in the windows reaches <code>minConfidence</code>, the call falls back to a full
+     * search of the field. Steady-state cost is then proportional to the window area rather than the field area.
+     * <p>
+     * This must not be called concurrently with {@link WeightedAveragePositionIntegrator#getCandidates(double)}.
+     *
+     * @param drive         The drive to take motion from, or null to assume the robot stays put between calls.
+     * @param windowRadius  The half-width of the square window searched around each predicted position, in the same units
+     *                      as the field dimensions.
+     * @param minConfidence The correlation strength below which a tracking search is considered lost.
+     */
+    public void setTracking(RobotDrive drive, double windowRadius, double minConfidence) {
+        this.tracking = true;
+        this.trackingDrive = drive;
+        this.trackingWindow = windowRadius;
+        this.trackingMinConfidence = minConfidence;
+        this.previous = Collections.emptyList();
+        if (drive != null) {
+            RobotPosition now = drive.getCurrentPosition();
+            lastDriveX = now.getX();
+            lastDriveY = now.getY();
+        }
+    }
+
+    /**
+     * Sets how far below the fine grid each candidate's position is refined, as further levels of a coarse-to-fine pyramid.
+     * Each level splits the cells kept from the level above into 3x3 children a third of the size, and keeps only the
+     * few with the highest likelihood to split again. Children whose upper bound (see {@link BoundedSensor}) cannot beat
+     * the best value found so far are dropped. Refinement of a candidate stops early once a level no longer improves on its best value, as happens when
+     * the sensors cannot resolve positions any finer, so sharp sensors are searched deeper than flat ones.
+     * <p>
+     * This must not be called concurrently with {@link WeightedAveragePositionIntegrator#getCandidates(double)}.
+     *
+     * @param levels  The maximum number of levels below the fine grid, or 0 to report fine grid positions as they are.
+     * @param minStep The smallest step to refine to, in the same units as the field dimensions.
+     */
+    public void setRefinement(int levels, double minStep) {
+        if (levels < 0) {
+            throw new IllegalArgumentException("levels must not be negative");
+        }
+        this.refineLevels = levels;
+        this.refineMinStep = minStep;
+    }
+
+    /**
+     * Turns tracking mode off, so that every call searches the whole field.
+     */
+    public void disableTracking() {
+        this.tracking = false;
+        this.trackingDrive = null;
+        this.previous = Collections.emptyList();
+    }
+
+    private static double bestStrength(List<LocationCandidate> candidates) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (LocationCandidate c : candidates) {
+            best = Math.max(best, c.getCorrelationStrength());
+        }
+        return best;
+    }
+
+    /*
+     * Searches only the windows around the predicted positions of the previous candidates. Every tile in a window is
+     * fine-filled. The ring of tiles just outside the windows gets fresh coarse values, so that a tile on a window's edge
+     * is still compared with its neighbours outside by the relative maximum check, and is not taken for a peak that is
+     * really just past the edge; tiles further out are never looked at.
+     */
+    private List<LocationCandidate> trackWindows0(double minCorr, double dx, double dy) {
+        if (++stamp == 0) {
+            Arrays.fill(windowStamp, 0);
+            stamp = 1;
+        }
+        windowCount = 0;
+        int r = (int) Math.ceil(trackingWindow / COARSE_SEARCH_STEP);
+        for (LocationCandidate c : previous) {
+            int xT = getNearest(c.getPosition().getX() + dx);
+            int yT = getNearest(c.getPosition().getY() + dy);
+            for (int x = Math.max(0, xT - r); x <= Math.min(cX - 1, xT + r); x++) {
+                for (int y = Math.max(0, yT - r); y <= Math.min(cY - 1, yT + r); y++) {
+                    int t = x * cY + y;
+                    if (windowStamp[t] != stamp) {
+                        windowStamp[t] = stamp;
+                        windowTiles[windowCount++] = t;
+                        hasFine[t] = true;
+                    }
+                }
+            }
+        }
+        fillWindowEdges0();
+        ForkJoinPool pool = this.pool;
+        if (pool != null) {
+            pool.invoke(new RangeAction(0, windowCount, i -> computeFine(windowTiles[i])));
+        } else {
+            for (int i = 0; i < windowCount; i++) {
+                computeFine(windowTiles[i]);
+            }
+        }
+        List<LocationCandidate> candidates = new ArrayList<>();
+        windowed = true;
+        try {
+            for (int i = 0; i < windowCount; i++) {
+                int t = windowTiles[i];
+                addCandidate0(candidates, t / cY, t % cY, minCorr);
+            }
+        } finally {
+            windowed = false;
+        }
+        return candidates;
+    }
+
+    /*
+     * Marks the tiles bordering the windows as part of this search, without fine values, and evaluates their coarse
+     * values. They are listed in windowTiles after the windows' own tiles, from windowCount on.
+     */
+    private void fillWindowEdges0() {
+        int end = windowCount;
+        for (int i = 0; i < windowCount; i++) {
+            int xT = windowTiles[i] / cY, yT = windowTiles[i] % cY;
+            for (int x = Math.max(0, xT - 1); x <= Math.min(cX - 1, xT + 1); x++) {
+                for (int y = Math.max(0, yT - 1); y <= Math.min(cY - 1, yT + 1); y++) {
+                    int t = x * cY + y;
+                    if (windowStamp[t] != stamp) {
+                        windowStamp[t] = stamp;
+                        windowTiles[end++] = t;
+                        hasFine[t] = false;
+                    }
+                }
+            }
+        }
+        // a column's batch at a time, the last one padded out by repeating its last tile
+        Batch b = batches.get()[0];
+        for (int from = windowCount; from < end; from += cY) {
+            int to = Math.min(end, from + cY);
+            for (int j = 0; j < cY; j++) {
+                int t = windowTiles[Math.min(from + j, to - 1)];
+                b.xs[j] = getDimension(t / cY);
+                b.ys[j] = getDimension(t % cY);
+            }
+            calculateWeighted(b);
+            for (int i = from; i < to; i++) {
+                coarse[windowTiles[i]] = b.sums[i - from];
+            }
+        }
+    }
+
+    private List<LocationCandidate> globalSearch0(double minCorr) {
+        ForkJoinPool pool = this.pool;
+        double avg = fillCoarse0(pool);
 
-        fillSensorSuggestions0();
+        List<Integer> suggested = findSensorSuggestions0();
+        if (pool != null) {
+            prefetchIslands0(pool, suggested, avg);
+        }
+
+        fillSensorSuggestions0(suggested);
 
         fillDetectedIslands0(avg);
 
         return findCandidates0(minCorr);
     }
 
+    /**
+     * Sets the pool used to evaluate the search grid in parallel, or null (the default) to evaluate it on the calling
+     * thread. Candidates are exactly the same either way. In parallel mode, sensors are called from the pool's threads,
+     * several at once; see {@link Sensor#getLikelihood(double, double)}.
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     private List<LocationCandidate> findCandidates0(double minCorr) {
         List<LocationCandidate> candidates = new ArrayList<>();
 
         for (int x = 0; x < cX; x++) {
             for (int y = 0; y < cY; y++) {
-                if (checkRelMax(x, y) && tiles[x][y].getMax() > minCorr) {
-                    IntPair fine = tiles[x][y].getMaxPos();
-                    double xPos = getFineDimension(x, fine.x);
-                    double yPos = getFineDimension(y, fine.y);
-                    candidates.add(new LocationCandidate(new ImmutableRobotPosition(xPos, yPos, 0), tiles[x][y].getMax()));
-                }
+                addCandidate0(candidates, x, y, minCorr);
             }
         }
 
         return candidates;
     }
 
+    private void addCandidate0(List<LocationCandidate> candidates, int x, int y, double minCorr) {
+        int t = x * cY + y;
+        double max = getMax(t);
+        if (max > minCorr && checkRelMax(x, y)) {
+            int pos = getMaxPos(t);
+            double xPos = getFineDimension(x, pos / FINE_STEP_SUBDIVISIONS - FINE_STEPS_IN_EACH_DIRECTION);
+            double yPos = getFineDimension(y, pos % FINE_STEP_SUBDIVISIONS - FINE_STEPS_IN_EACH_DIRECTION);
+            if (refineLevels > 0) {
+                refine0(xPos, yPos, max);
+                xPos = refined[0];
+                yPos = refined[1];
+                max = refined[2];
+            }
+            candidates.add(new LocationCandidate(new ImmutableRobotPosition(xPos, yPos, findHeading0(xPos, yPos)), max));
+        }
+    }
+
+    /*
+     * Finds the most likely heading at a point, searching only the one angular dimension now that the position is known,
+     * rather than a grid over all three. Sensors that say nothing about heading leave it at 0, as the first angle tried.
+     */
+    private double findHeading0(double x, double y) {
+        // the weights depend only on the position, so are asked for once rather than for every heading tried
+        double[] weights = headingWeights;
+        double weightSum = 0;
+        int j = 0;
+        for (Sensor s : sensors) {
+            weights[j] = s.getWeight(x, y);
+            weightSum += weights[j++];
+        }
+        double step = 2 * Math.PI / HEADING_STEPS;
+        double best = 0, bestVal = getOrientationWeighted(x, y, 0, weights, weightSum);
+        for (int i = 1; i < HEADING_STEPS; i++) {
+            double theta = Math.IEEEremainder(i * step, 2 * Math.PI);
+            double val = getOrientationWeighted(x, y, theta, weights, weightSum);
+            if (val > bestVal) {
+                best = theta;
+                bestVal = val;
+            }
+        }
+        for (int level = 0; level < HEADING_LEVELS; level++) {
+            step /= 3;
+            double centre = best;
+            for (int side = -1; side <= 1; side += 2) {
+                double theta = Math.IEEEremainder(centre + side * step, 2 * Math.PI);
+                double val = getOrientationWeighted(x, y, theta, weights, weightSum);
+                if (val > bestVal) {
+                    best = theta;
+                    bestVal = val;
+                }
+            }
+        }
+        return best;
+    }
+
+    // the weighted average of the sensors' heading likelihoods, as calculateWeighted does for position, given each
+    // sensor's weight at (x, y) in iteration order and their sum
+    private double getOrientationWeighted(double x, double y, double theta, double[] weights, double weightSum) {
+        double sum = 0;
+        int j = 0;
+        for (Sensor s : sensors) {
+            sum += s.getOrientationLikelihood(x, y, theta) * weights[j++];
+        }
+        return sum / weightSum;
+    }
+
+    /*
+     * Refines a peak of the fine grid level by level, as a beam search with branch-and-bound pruning, leaving the best
+     * position and value found in refined[].
+     */
+    private void refine0(double x, double y, double value) {
+        int levels = refineLevels;
+        double minStep = refineMinStep;
+        Batch b = batches.get()[2];
+        double step = COARSE_SEARCH_STEP / FINE_STEP_SUBDIVISIONS;
+        double bestX = x, bestY = y, best = value;
+        frontierX[0] = x;
+        frontierY[0] = y;
+        int size = 1;
+        for (int level = 0; level < levels && size > 0; level++) {
+            double childStep = step / REFINE_SUBDIVISIONS;
+            if (childStep < minStep) {
+                break;
+            }
+            int children = 0;
+            double levelBest = best;
+            for (int c = 0; c < size; c++) {
+                for (int i = 0; i < REFINE_CELLS; i++) {
+                    int dx = i / REFINE_SUBDIVISIONS - REFINE_SUBDIVISIONS / 2;
+                    int dy = i % REFINE_SUBDIVISIONS - REFINE_SUBDIVISIONS / 2;
+                    b.xs[i] = Math.min(fieldX, Math.max(0, frontierX[c] + dx * childStep));
+                    b.ys[i] = Math.min(fieldY, Math.max(0, frontierY[c] + dy * childStep));
+                }
+                calculateWeighted(b);
+                for (int i = 0; i < REFINE_CELLS; i++) {
+                    childX[children] = b.xs[i];
+                    childY[children] = b.ys[i];
+                    childV[children] = b.sums[i];
+                    childTaken[children] = false;
+                    children++;
+                    if (b.sums[i] > levelBest) {
+                        levelBest = b.sums[i];
+                        bestX = b.xs[i];
+                        bestY = b.ys[i];
+                    }
+                }
+            }
+            boolean improved = levelBest > best + REFINE_MIN_GAIN;
+            best = levelBest;
+            if (!improved) {
+                break;
+            }
+            // keep the most likely children that could still hold something better than the best so far
+            size = 0;
+            while (size < REFINE_BEAM) {
+                int pick = -1;
+                for (int i = 0; i < children; i++) {
+                    if (!childTaken[i] && (pick < 0 || childV[i] > childV[pick])) {
+                        pick = i;
+                    }
+                }
+                if (pick < 0) {
+                    break;
+                }
+                childTaken[pick] = true;
+                if (getBound(childX[pick], childY[pick], childStep / 2) > best) {
+                    frontierX[size] = childX[pick];
+                    frontierY[size] = childY[pick];
+                    size++;
+                }
+            }
+            step = childStep;
+        }
+        refined[0] = bestX;
+        refined[1] = bestY;
+        refined[2] = best;
+    }
+
+    /*
+     * An upper bound on the weighted average likelihood over the square of half-width h around (x, y). Weights are taken
+     * at the centre, as they are meant to vary slowly over such small cells.
+     */
+    private double getBound(double x, double y, double h) {
+        double sum = 0, weightSum = 0;
+        for (Sensor s : sensors) {
+            double w = s.getWeight(x, y);
+            double bound = (s instanceof BoundedSensor)
+                    ? ((BoundedSensor) s).getLikelihoodBound(x - h, y - h, x + h, y + h) : Double.POSITIVE_INFINITY;
+            sum += w * bound;
+            weightSum += w;
+        }
+        return sum / weightSum;
+    }
+
     private void fillDetectedIslands0(double avg) {
         for (int x = 0; x < cX; x++) {
             for (int y = 0; y < cY; y++) {
-                if (tiles[x][y].coarse > islandMinAbsolute || tiles[x][y].coarse > (avg * correlatorMinSNR)) {
+                double c = coarse[x * cY + y];
+                if (c > islandMinAbsolute || c > (avg * correlatorMinSNR)) {
                     //System.out.println("x = " + x + ", y = " + y);
                     fillInPos(x, y);
                 }
@@ -152,34 +560,144 @@ public class WeightedAveragePositionIntegrator implements PositionIntegrator {
         }
     }
 
-    private void fillSensorSuggestions0() {
+    // tiles nearest the sensors' hotspots, in order; asked for once, so that sensors see the same number of calls either way
+    private List<Integer> findSensorSuggestions0() {
+        List<Integer> suggested = new ArrayList<>();
         for (Sensor s : sensors) {
             for (RobotPosition lc : s.getPossibleHotspots()) {
                 //System.out.println("lc = " + lc);
-                fillIn(lc.getX(), lc.getY());
+                int xT = getNearest(lc.getX());
+                int yT = getNearest(lc.getY());
+                if (xT >= 0 && xT < cX && yT >= 0 && yT < cY) {
+                    suggested.add(xT * cY + yT);
+                }
             }
         }
+        return suggested;
+    }
+
+    private void fillSensorSuggestions0(List<Integer> suggested) {
+        for (int t : suggested) {
+            fillIn0(t / cY, t % cY, fineSearchMaxDimension);
+        }
     }
 
-    private double fillCoarse0() {
+    private double fillCoarse0(ForkJoinPool pool) {
+        // stale fine values need no clearing, as they are ignored until hasFine is set and then overwritten in full
+        Arrays.fill(hasFine, false);
+        Arrays.fill(fineComputed, false);
+        if (pool != null) {
+            pool.invoke(new RangeAction(0, cX, this::fillCoarseColumn));
+        } else {
+            for (int x = 0; x < cX; x++) {
+                fillCoarseColumn(x);
+            }
+        }
+        // summed in the same order in both modes, so that the average is bit-for-bit the same
         double total = 0;
-        for (int x = 0; x < cX; x++) {
-            for (int y = 0; y < cY; y++) {
-                // reference!
-                Tile t = tiles[x][y];
-                t.hasFine = false;
-                t.zero();
-                t.coarse = calculateWeighted(getDimension(x), getDimension(y));
-                total += t.coarse;
+        for (double val : coarse) {
+            total += val;
+        }
+        return total / ((double) cX * cY);
+    }
+
+    private void fillCoarseColumn(int x) {
+        Batch b = batches.get()[0];
+        double xDim = getDimension(x);
+        for (int y = 0; y < cY; y++) {
+            b.xs[y] = xDim;
+            b.ys[y] = getDimension(y);
+        }
+        calculateWeighted(b);
+        System.arraycopy(b.sums, 0, coarse, x * cY, cY);
+    }
+
+    /*
+     * Computes, in parallel, the fine values of every tile that the island fill could possibly reach: the seed tiles, then
+     * ring after ring of neighbours of tiles whose fine maximum exceeds islandRemainStrength. The fill itself then runs
+     * sequentially as usual, finding the values it needs already computed, so it fills exactly the same tiles.
+     */
+    private void prefetchIslands0(ForkJoinPool pool, List<Integer> suggested, double avg) {
+        if (++prefetchStamp == 0) {
+            Arrays.fill(prefetchQueued, 0);
+            prefetchStamp = 1;
+        }
+        // each tile is queued at most once, so every ring fits after the last in the one array
+        final int[] tiles = prefetchTiles;
+        int end = 0;
+        for (int t : suggested) {
+            if (prefetchQueued[t] != prefetchStamp) {
+                prefetchQueued[t] = prefetchStamp;
+                tiles[end++] = t;
             }
         }
-        return total / (cX * cY);
+        for (int t = 0; t < coarse.length; t++) {
+            if (prefetchQueued[t] != prefetchStamp && (coarse[t] > islandMinAbsolute || coarse[t] > (avg * correlatorMinSNR))) {
+                prefetchQueued[t] = prefetchStamp;
+                tiles[end++] = t;
+            }
+        }
+        for (int ring = 0, start = 0; start < end; ring++) {
+            pool.invoke(new RangeAction(start, end, i -> computeFine(tiles[i])));
+            if (ring == fineSearchMaxDimension) {
+                break;
+            }
+            int ringEnd = end;
+            for (int i = start; i < ringEnd; i++) {
+                int t = tiles[i];
+                if (fineMax[t] > islandRemainStrength) {
+                    int xT = t / cY, yT = t % cY;
+                    for (int dx = -1; dx <= 1; dx++) {
+                        for (int dy = -1; dy <= 1; dy++) {
+                            int x = xT + dx, y = yT + dy;
+                            if (x >= 0 && x < cX && y >= 0 && y < cY && prefetchQueued[x * cY + y] != prefetchStamp) {
+                                prefetchQueued[x * cY + y] = prefetchStamp;
+                                tiles[end++] = x * cY + y;
+                            }
+                        }
+                    }
+                }
+            }
+            start = ringEnd;
+        }
+    }
+
+    private void computeFine(int t) {
+        Batch b = batches.get()[1];
+        int xT = t / cY, yT = t % cY;
+        for (int x = -FINE_STEPS_IN_EACH_DIRECTION; x <= FINE_STEPS_IN_EACH_DIRECTION; x++) {
+            double xDim = getFineDimension(xT, x);
+            for (int y = -FINE_STEPS_IN_EACH_DIRECTION; y <= FINE_STEPS_IN_EACH_DIRECTION; y++) {
+                int i = fineIndex(t, x, y) - t * FINE_CELLS;
+                b.xs[i] = xDim;
+                b.ys[i] = getFineDimension(yT, y);
+            }
+        }
+        calculateWeighted(b);
+        System.arraycopy(b.sums, 0, fine, t * FINE_CELLS, FINE_CELLS);
+        // one pass for all three statistics, so that candidate extraction never rescans a tile
+        double sum = 0, max = 0, posMax = 0;
+        int pos = FINE_CELLS / 2;
+        for (int i = 0; i < FINE_CELLS; i++) {
+            double val = b.sums[i];
+            sum += val;
+            max = Math.max(max, val);
+            // tracked apart from max, as they differ on NaN; the first of equal values wins
+            if (val > posMax) {
+                pos = i;
+                posMax = val;
+            }
+        }
+        fineAvg[t] = sum / FINE_CELLS;
+        fineMax[t] = max;
+        fineMaxPos[t] = pos;
+        fineComputed[t] = true;
     }
 
     // actually checks if this max is at least correlatorMinSNR the surrounding average
     @SuppressWarnings({"RedundantIfStatement", "ControlFlowStatementWithoutBraces"})
     private boolean checkRelMax(int x, int y) {
-        double max = tiles[x][y].getMax();
+        double max = getMax(x * cY + y);
         if (max < (correlatorMinSNR * getSafeAvg(x + 1, y - 1)) && max < islandMinAbsolute) return false;
         if (max < (correlatorMinSNR * getSafeAvg(x + 1, y)) && max < islandMinAbsolute) return false;
         if (max < (correlatorMinSNR * getSafeAvg(x + 1, y + 1)) && max < islandMinAbsolute) return false;
@@ -193,16 +711,29 @@ public class WeightedAveragePositionIntegrator implements PositionIntegrator {
         return true;
     }
 
-    private double getSafeMax(int x, int y) {
-        if (x > cX || x < 0 || y > cY || y < 0) {
-            return 0;
-        } else return tiles[x][y].getMax();
-    }
-
     private double getSafeAvg(int x, int y) {
         if (x >= cX || x < 0 || y >= cY || y < 0) {
             return 0;
-        } else return tiles[x][y].getAvg();
+        } else if (windowed && windowStamp[x * cY + y] != stamp) {
+            return 0;
+        } else return getAvg(x * cY + y);
+    }
+
+    private static int fineIndex(int t, int fx, int fy) {
+        return t * FINE_CELLS + (fx + FINE_STEPS_IN_EACH_DIRECTION) * FINE_STEP_SUBDIVISIONS + (fy + FINE_STEPS_IN_EACH_DIRECTION);
+    }
+
+    private double getAvg(int t) {
+        return hasFine[t] ? fineAvg[t] : coarse[t];
+    }
+
+    private double getMax(int t) {
+        return hasFine[t] ? fineMax[t] : coarse[t];
+    }
+
+    // returns the offset of the tile's maximum within its fine cells, i.e. (fx + 4) * 9 + (fy + 4); the centre without fine values
+    private int getMaxPos(int t) {
+        return hasFine[t] ? fineMaxPos[t] : FINE_CELLS / 2;
     }
 
     private double getDimension(int idx) {
@@ -218,136 +749,130 @@ public class WeightedAveragePositionIntegrator implements PositionIntegrator {
         return (int) Math.round((dim - firstCoarseVal) / COARSE_SEARCH_STEP);
     }
 
-    private void fillIn(double x, double y) {
-        int xT = getNearest(x);
-        int yT = getNearest(y);
-        fillIn0(xT, yT, fineSearchMaxDimension);
-    }
-
     private void fillInPos(int x, int y) {
         fillIn0(x, y, fineSearchMaxDimension);
     }
 
-    // what the heck, recursion?
+    /*
+     * Flood fills fine values outwards from a tile, breadth first. A filled tile whose fine maximum exceeds
+     * islandRemainStrength spreads to its eight neighbours, up to maxDim steps from the start; tiles already filled
+     * (by this or an earlier fill) are not revisited. As the queue is first-in first-out, each tile is reached by its
+     * shortest path, and so gets the most room to spread, whatever order neighbours are queued in.
+     *
+     * Each tile is queued at most once per getCandidates call, and the ring buffer has a slot more than there are tiles,
+     * so it never overflows, and head == tail only when it is empty.
+     */
     private void fillIn0(int xT, int yT, int maxDim) {
-        //System.out.println("xT = [" + xT + "], yT = [" + yT + "], maxDim = [" + maxDim + "], cY = " + cY);
-
         if (!(xT >= 0 && xT < cX)) return;
         if (!(yT >= 0 && yT < cY)) return;
-        Tile t = tiles[xT][yT];
-        if (t.hasFine) return;
-        t.hasFine = true;
-        //assert t.fine.length == FINE_STEP_SUBDIVISIONS : "mis-sized fine array";
-        //assert t.fine[0].length == FINE_STEP_SUBDIVISIONS : "mis-sized fine array";
-        double max = 0;
-        for (int x = -FINE_STEPS_IN_EACH_DIRECTION; x <= FINE_STEPS_IN_EACH_DIRECTION; x++) {
-            for (int y = -FINE_STEPS_IN_EACH_DIRECTION; y <= FINE_STEPS_IN_EACH_DIRECTION; y++) {
-                double val = calculateWeighted(getFineDimension(xT, x), getFineDimension(yT, y));
-                t.fine[x + FINE_STEPS_IN_EACH_DIRECTION][y + FINE_STEPS_IN_EACH_DIRECTION] = val;
-                max = Math.max(val, max);
+        int start = xT * cY + yT;
+        if (hasFine[start]) return;
+        hasFine[start] = true;
+        int capacity = fillQueue.length;
+        int head = 0, tail = 0;
+        fillQueue[tail] = start;
+        fillDepth[tail] = 0;
+        tail = (tail + 1) % capacity;
+        while (head != tail) {
+            int t = fillQueue[head];
+            int depth = fillDepth[head];
+            head = (head + 1) % capacity;
+            if (!fineComputed[t]) {
+                computeFine(t);
             }
-
-            if (max > islandRemainStrength && maxDim > 0) {
-                //System.out.println("RECURSING!");
-                // most of these return quickly. Optimize if needed.
-                fillIn0(xT + 1, yT, maxDim - 1);
-                fillIn0(xT + 1, yT + 1, maxDim - 1);
-                fillIn0(xT, yT + 1, maxDim - 1);
-                fillIn0(xT - 1, yT + 1, maxDim - 1);
-                fillIn0(xT - 1, yT, maxDim - 1);
-                fillIn0(xT - 1, yT - 1, maxDim - 1);
-                fillIn0(xT, yT - 1, maxDim - 1);
-                fillIn0(xT + 1, yT - 1, maxDim - 1);
+            if (fineMax[t] > islandRemainStrength && depth < maxDim) {
+                int x = t / cY, y = t % cY;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        int nx = x + dx, ny = y + dy;
+                        if (nx >= 0 && nx < cX && ny >= 0 && ny < cY && !hasFine[nx * cY + ny]) {
+                            hasFine[nx * cY + ny] = true;
+                            fillQueue[tail] = nx * cY + ny;
+                            fillDepth[tail] = depth + 1;
+                            tail = (tail + 1) % capacity;
+                        }
+                    }
+                }
             }
-
         }
     }
 
-    private double calculateWeighted(double x, double y) {
-        assert x <= fieldX && x >= 0 : "fieldX out of bounds";
-        assert y <= fieldY && y >= 0 : "fieldY out of bounds";
-        double sum = 0;
-        double weights = 0;
+    // evaluates the weighted average likelihood at each point of the batch, leaving it in b.sums
+    private void calculateWeighted(Batch b) {
+        int n = b.xs.length;
+        for (int i = 0; i < n; i++) {
+            assert b.xs[i] <= fieldX && b.xs[i] >= 0 : "fieldX out of bounds";
+            assert b.ys[i] <= fieldY && b.ys[i] >= 0 : "fieldY out of bounds";
+        }
+        double[] sums = b.sums, weightSums = b.weightSums, likelihoods = b.likelihoods, weights = b.weights;
+        Arrays.fill(sums, 0);
+        Arrays.fill(weightSums, 0);
         for (Sensor s : sensors) {
-            double weight = s.getWeight(x, y);
-            sum += (s.getLikelihood(x, y) * weight);
-            weights += weight;
+            SensorBatches.getWeights(s, b.xs, b.ys, weights);
+            SensorBatches.getLikelihoods(s, b.xs, b.ys, likelihoods);
+            for (int i = 0; i < n; i++) {
+                sums[i] += likelihoods[i] * weights[i];
+                weightSums[i] += weights[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            sums[i] /= weightSums[i];
         }
-        return sum / weights;
     }
 
-    // instances of this class are re-used often, for performance reasons.
-    private static class Tile {
-        private static final IntPair COARSE_POSITION = new IntPair(FINE_STEPS_IN_EACH_DIRECTION, FINE_STEPS_IN_EACH_DIRECTION);
-
-        double coarse;
-        final double[][] fine;
-        boolean hasFine = false;
+    // scratch space for evaluating a batch of points at once, so that sensors are called once per batch rather than per point
+    private static final class Batch {
+        final double[] xs, ys, likelihoods, weights, sums, weightSums;
+
+        Batch(int n) {
+            xs = new double[n];
+            ys = new double[n];
+            likelihoods = new double[n];
+            weights = new double[n];
+            sums = new double[n];
+            weightSums = new double[n];
+        }
+    }
 
-        Tile(int fineSubdivs) {
-            fine = new double[fineSubdivs][fineSubdivs];
+    // per thread, as the pool may evaluate several columns or tiles at once: {a coarse column, a fine tile, a refined cell}
+    private final ThreadLocal<Batch[]> batches = new ThreadLocal<Batch[]>() {
+        @Override
+        protected Batch[] initialValue() {
+            return new Batch[]{new Batch(cY), new Batch(FINE_CELLS), new Batch(REFINE_CELLS)};
         }
+    };
 
+    private interface IndexAction {
+        void run(int i);
+    }
 
-        //memoize? Fast!
-        public double getAvg() {
-            if (hasFine) {
-                double sum = 0;
-                for (int x = -FINE_STEPS_IN_EACH_DIRECTION; x <= FINE_STEPS_IN_EACH_DIRECTION; x++) {
-                    for (int y = -FINE_STEPS_IN_EACH_DIRECTION; y <= FINE_STEPS_IN_EACH_DIRECTION; y++) {
-                        sum += fine[x + FINE_STEPS_IN_EACH_DIRECTION][y + FINE_STEPS_IN_EACH_DIRECTION];
-                    }
-                }
-                return sum / (FINE_STEP_SUBDIVISIONS * FINE_STEP_SUBDIVISIONS);
-            } else return coarse;
-        }
+    // runs an action for each index in [from, to), splitting the range across the pool
+    private static final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        // ranges no longer than this are run as one task. An index is a column or a tile, each some tens of sensor
+        // evaluations, so a few of them outweigh the cost of forking.
+        private static final int MIN_RANGE = 4;
 
-        public void zero() {
-            this.hasFine = false;
-            this.coarse = 0;
-            for (int x = 0; x < fine.length; x++) {
-                for (int y = 0; y < fine[x].length; y++) {
-                    fine[x][y]=0;
-                }
-            }
-        }
+        private final int from, to;
+        private final IndexAction action;
 
+        RangeAction(int from, int to, IndexAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
 
-        //memoize? Fast!
-        public double getMax() {
-            if (hasFine) {
-                double max = 0;
-                for (int x = -FINE_STEPS_IN_EACH_DIRECTION; x <= FINE_STEPS_IN_EACH_DIRECTION; x++) {
-                    for (int y = -FINE_STEPS_IN_EACH_DIRECTION; y <= FINE_STEPS_IN_EACH_DIRECTION; y++) {
-                        max = Math.max(max, fine[x + FINE_STEPS_IN_EACH_DIRECTION][y + FINE_STEPS_IN_EACH_DIRECTION]);
-                    }
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_RANGE) {
+                for (int i = from; i < to; i++) {
+                    action.run(i);
                 }
-                return max;
-            } else return coarse;
-        }
-
-        //memoize? Fast!
-        public IntPair getMaxPos() {
-            if (hasFine) {
-                int xPos = 0;
-                int yPos = 0;
-                double max = 0;
-                for (int x = -FINE_STEPS_IN_EACH_DIRECTION; x <= FINE_STEPS_IN_EACH_DIRECTION; x++) {
-                    for (int y = -FINE_STEPS_IN_EACH_DIRECTION; y <= FINE_STEPS_IN_EACH_DIRECTION; y++) {
-                        double val = fine[x + FINE_STEPS_IN_EACH_DIRECTION][y + FINE_STEPS_IN_EACH_DIRECTION];
-                        if (val > max) {
-                            xPos = x;
-                            yPos = y;
-                            max = val;
-                        }
-                    }
-                }
-                //System.out.println("Returning "+xPos+","+yPos);
-                return new IntPair(xPos, yPos);
-            } else return COARSE_POSITION;
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeAction(from, mid, action), new RangeAction(mid, to, action));
+            }
         }
-
-
     }
 
     public static class IntPair {
@@ -0,0 +1,277 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A precomputed Euclidean distance transform over the obstacle and illegal zones of a {@link Field}. The zones are
+ * rasterised onto a square grid, and each cell then holds the distance (in mm) from its centre to the nearest blocked
+ * cell, so that clearance queries are an array lookup rather than polygon geometry.
+ * <p>
+ * Values are accurate to roughly one cell size. Points outside the rasterised area are clamped onto its border, which
+ * can only under-estimate their clearance, as the area contains every blocking zone.
+ * <p>
+ * Instances are immutable once built, and may be shared freely between threads.
+ */
+public final class ClearanceMap {
+    // squared distance used for "no obstacle seen yet"; large, but still safe to add to in the transform.
+    private static final double FAR = 1e20;
+
+    private final long originX;
+    private final long originY;
+    private final long cellSize;
+    private final int width;
+    private final int height;
+
+    // clearance[cy * width + cx], in mm
+    private final double[] clearance;
+
+    /**
+     * Builds a map covering the rectangle from (minX, minY) to (maxX, maxY), inclusive.
+     *
+     * @param zones    The zones of the field. Only obstacle and illegal zones are rasterised.
+     * @param cellSize The edge length of a grid cell, in mm.
+     */
+    ClearanceMap(Iterable<Field.Zone> zones, long minX, long minY, long maxX, long maxY, long cellSize) {
+        this(blockingPolygons(zones), true, minX, minY, maxX, maxY, cellSize);
+    }
+
+    /**
+     * Builds a map of the distance to the given polygons, covering the rectangle from (minX, minY) to (maxX, maxY),
+     * inclusive.
+     *
+     * @param polygons     The polygons to measure distance to.
+     * @param fillInterior Whether points inside a polygon are at distance 0, or only points on its edges.
+     * @param cellSize     The edge length of a grid cell, in mm.
+     */
+    ClearanceMap(List<Point2D[]> polygons, boolean fillInterior, long minX, long minY, long maxX, long maxY, long cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cell size must be positive");
+        }
+        this.originX = minX;
+        this.originY = minY;
+        this.cellSize = cellSize;
+        this.width = (int) ((maxX - minX) / cellSize) + 1;
+        this.height = (int) ((maxY - minY) / cellSize) + 1;
+
+        boolean[] blocked = new boolean[width * height];
+        for (Point2D[] v : polygons) {
+            rasterise(v, fillInterior, blocked);
+        }
+
+        clearance = new double[width * height];
+        if (polygons.isEmpty()) {
+            Arrays.fill(clearance, Double.POSITIVE_INFINITY);
+            return;
+        }
+        for (int i = 0; i < blocked.length; i++) {
+            clearance[i] = blocked[i] ? 0 : FAR;
+        }
+        transform();
+    }
+
+    private static List<Point2D[]> blockingPolygons(Iterable<Field.Zone> zones) {
+        List<Point2D[]> rV = new ArrayList<>();
+        for (Field.Zone z : zones) {
+            if (z.isBlocking()) {
+                rV.add(z.vertices());
+            }
+        }
+        return rV;
+    }
+
+    /**
+     * Returns the clearance at a point, in mm.
+     *
+     * @return The distance to the nearest obstacle or illegal zone, or {@link Double#POSITIVE_INFINITY} if there are none.
+     */
+    public double getClearance(Point2D p) {
+        return getClearance(p.x, p.y);
+    }
+
+    /**
+     * Returns the clearance at a point, in mm.
+     *
+     * @return The distance to the nearest obstacle or illegal zone, or {@link Double#POSITIVE_INFINITY} if there are none.
+     */
+    public double getClearance(long x, long y) {
+        return clearance[cellY(y) * width + cellX(x)];
+    }
+
+    /**
+     * Returns the smallest clearance along a segment, sampled once per cell.
+     */
+    public double getMinimumClearance(Segment s) {
+        return scan(s.p0, s.p1, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Checks whether every point along the segment between two points keeps at least the given clearance. This stops at the
+     * first sample that is too close.
+     *
+     * @param required The clearance needed, in mm.
+     */
+    public boolean hasClearance(Point2D p0, Point2D p1, double required) {
+        return scan(p0, p1, required) >= required;
+    }
+
+    public long getCellSize() {
+        return cellSize;
+    }
+
+    // returns the min clearance seen, stopping early once it falls below stopBelow.
+    private double scan(Point2D p0, Point2D p1, double stopBelow) {
+        double dx = p1.x - p0.x;
+        double dy = p1.y - p0.y;
+        int samples = (int) Math.ceil(Math.hypot(dx, dy) / cellSize);
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i <= samples; i++) {
+            double t = (samples == 0) ? 0 : (double) i / samples;
+            double c = getClearance(Math.round(p0.x + dx * t), Math.round(p0.y + dy * t));
+            if (c < min) {
+                min = c;
+                if (min < stopBelow) {
+                    return min;
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Returns the index of the cell whose centre is nearest a point, or -1 if the point is outside the map.
+     */
+    int cellIndex(double x, double y) {
+        long cx = Math.round((x - originX) / cellSize);
+        long cy = Math.round((y - originY) / cellSize);
+        return (cx < 0 || cy < 0 || cx >= width || cy >= height) ? -1 : (int) (cy * width + cx);
+    }
+
+    int cellCount() {
+        return clearance.length;
+    }
+
+    // the clearance of a cell, by index
+    double getCellClearance(int index) {
+        return clearance[index];
+    }
+
+    private int cellX(long x) {
+        return clamp((int) Math.round((double) (x - originX) / cellSize), width);
+    }
+
+    private int cellY(long y) {
+        return clamp((int) Math.round((double) (y - originY) / cellSize), height);
+    }
+
+    private static int clamp(int v, int size) {
+        return v < 0 ? 0 : (v >= size ? size - 1 : v);
+    }
+
+    private void rasterise(Point2D[] v, boolean fillInterior, boolean[] blocked) {
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (Point2D p : v) {
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+        // interior, by cell centre
+        for (int cy = cellY(minY); fillInterior && cy <= cellY(maxY); cy++) {
+            long py = originY + cy * cellSize;
+            for (int cx = cellX(minX); cx <= cellX(maxX); cx++) {
+                if (GeometryUtils.checkWindingNumber(originX + cx * cellSize, py, v) != 0) {
+                    blocked[cy * width + cx] = true;
+                }
+            }
+        }
+        // boundary, so that zones thinner than a cell still block
+        for (int i = 0; i < v.length; i++) {
+            Point2D a = v[i];
+            Point2D b = v[(i + 1) % v.length];
+            double dx = b.x - a.x;
+            double dy = b.y - a.y;
+            int steps = (int) Math.ceil(2 * Math.hypot(dx, dy) / cellSize);
+            for (int s = 0; s <= steps; s++) {
+                double t = (steps == 0) ? 0 : (double) s / steps;
+                blocked[cellY(Math.round(a.y + dy * t)) * width + cellX(Math.round(a.x + dx * t))] = true;
+            }
+        }
+    }
+
+    // Separable squared EDT (Felzenszwalb & Huttenlocher), columns then rows; converts to mm at the end.
+    private void transform() {
+        int n = Math.max(width, height);
+        double[] f = new double[n];
+        double[] d = new double[n];
+        int[] v = new int[n];
+        double[] z = new double[n + 1];
+
+        for (int cx = 0; cx < width; cx++) {
+            for (int cy = 0; cy < height; cy++) {
+                f[cy] = clearance[cy * width + cx];
+            }
+            transform1D(f, height, d, v, z);
+            for (int cy = 0; cy < height; cy++) {
+                clearance[cy * width + cx] = d[cy];
+            }
+        }
+        for (int cy = 0; cy < height; cy++) {
+            System.arraycopy(clearance, cy * width, f, 0, width);
+            transform1D(f, width, d, v, z);
+            for (int cx = 0; cx < width; cx++) {
+                clearance[cy * width + cx] = Math.sqrt(d[cx]) * cellSize;
+            }
+        }
+    }
+
+    private static void transform1D(double[] f, int n, double[] d, int[] v, double[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = 1; q < n; q++) {
+            double s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2.0 * q - 2.0 * v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2.0 * q - 2.0 * v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            d[q] = (q - v[k]) * (double) (q - v[k]) + f[v[k]];
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks which waypoints of a field are connected to each other, using a disjoint-set forest with path compression and
+ * union by rank. Adding waypoints and connections is handled incrementally. Removing a waypoint that may split a
+ * component marks the structure as stale, and it is rebuilt from the field on the next query.
+ */
+final class ConnectedComponents {
+    private final Map<Waypoint, Integer> index = new HashMap<>();
+    private int[] parent = new int[16];
+    private byte[] rank = new byte[16];
+    private int size = 0;
+    // slots of removed waypoints, which are only reclaimed by a rebuild
+    private int dead = 0;
+    private boolean stale = false;
+
+    /**
+     * Starts tracking a waypoint, joined to any of its neighbors that are already tracked, as connections may be made
+     * before either end is added to the field.
+     */
+    void add(Waypoint w) {
+        if (stale || index.containsKey(w)) {
+            return;
+        }
+        if (size == parent.length) {
+            parent = Arrays.copyOf(parent, size * 2);
+            rank = Arrays.copyOf(rank, size * 2);
+        }
+        parent[size] = size;
+        rank[size] = 0;
+        index.put(w, size++);
+        for (int i = 0; i < w.getDegree(); i++) {
+            connect(w, w.getNeighbor(i));
+        }
+    }
+
+    void connect(Waypoint a, Waypoint b) {
+        if (stale) {
+            return;
+        }
+        Integer ia = index.get(a);
+        Integer ib = index.get(b);
+        if (ia == null || ib == null) {
+            return;
+        }
+        int ra = find(ia);
+        int rb = find(ib);
+        if (ra == rb) {
+            return;
+        }
+        if (rank[ra] < rank[rb]) {
+            parent[ra] = rb;
+        } else if (rank[ra] > rank[rb]) {
+            parent[rb] = ra;
+        } else {
+            parent[rb] = ra;
+            rank[ra]++;
+        }
+    }
+
+    /**
+     * Forgets a waypoint, which must be called before it is disconnected from its neighbors.
+     */
+    void remove(Waypoint w) {
+        // a waypoint with at most one neighbor cannot be holding two others together.
+        if (w.getDegree() > 1) {
+            stale = true;
+        }
+        // its slot stays behind as an internal node, until the next rebuild, which is forced once they are half of all
+        // slots, so that adding and removing leaves cannot grow the arrays without bound.
+        if (index.remove(w) != null && ++dead > size / 2) {
+            stale = true;
+        }
+    }
+
+    /**
+     * Checks if there is any path between two waypoints.
+     *
+     * @param all Every waypoint of the field, used if a rebuild is needed.
+     */
+    boolean connected(Waypoint a, Waypoint b, Iterable<Waypoint> all) {
+        if (stale) {
+            rebuild(all);
+        }
+        Integer ia = index.get(a);
+        Integer ib = index.get(b);
+        return ia != null && ib != null && find(ia) == find(ib);
+    }
+
+    private void rebuild(Iterable<Waypoint> all) {
+        stale = false;
+        index.clear();
+        size = 0;
+        dead = 0;
+        // each connection is made when the second of its ends is added
+        for (Waypoint w : all) {
+            add(w);
+        }
+    }
+
+    private int find(int i) {
+        int root = i;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        while (parent[i] != root) {
+            int next = parent[i];
+            parent[i] = root;
+            i = next;
+        }
+        return root;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The edges of a set of polygons, kept in flat arrays and bucketed into a uniform grid of square cells, along with each
+ * polygon's bounding box. Geometric queries use it to test only the edges near the area they are interested in.
+ * Immutable once built.
+ */
+final class EdgeGrid {
+    final Point2D[][] polygons;
+    final long[] polyMinX, polyMinY, polyMaxX, polyMaxY;
+
+    // edge e runs from (ex0[e], ey0[e]) to (ex1[e], ey1[e])
+    final double[] ex0, ey0, ex1, ey1;
+
+    // the edges overlapping cell (cx, cy) are cellEdges[cellStart[c] .. cellStart[c + 1]), where c = cy * cols + cx
+    final long originX, originY, cellSize;
+    final int cols, rows;
+    final int[] cellStart;
+    final int[] cellEdges;
+
+    EdgeGrid(List<Point2D[]> polys, long cellSize) {
+        this.cellSize = cellSize;
+        int polyCount = polys.size(), edgeCount = 0;
+        for (Point2D[] v : polys) {
+            edgeCount += v.length;
+        }
+        polygons = polys.toArray(new Point2D[polyCount][]);
+        polyMinX = new long[polyCount];
+        polyMinY = new long[polyCount];
+        polyMaxX = new long[polyCount];
+        polyMaxY = new long[polyCount];
+        ex0 = new double[edgeCount];
+        ey0 = new double[edgeCount];
+        ex1 = new double[edgeCount];
+        ey1 = new double[edgeCount];
+
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        int e = 0;
+        for (int p = 0; p < polyCount; p++) {
+            Point2D[] v = polygons[p];
+            polyMinX[p] = polyMinY[p] = Long.MAX_VALUE;
+            polyMaxX[p] = polyMaxY[p] = Long.MIN_VALUE;
+            for (int i = 0; i < v.length; i++) {
+                Point2D a = v[i], b = v[(i + 1) % v.length];
+                ex0[e] = a.x;
+                ey0[e] = a.y;
+                ex1[e] = b.x;
+                ey1[e] = b.y;
+                e++;
+                polyMinX[p] = Math.min(polyMinX[p], a.x);
+                polyMinY[p] = Math.min(polyMinY[p], a.y);
+                polyMaxX[p] = Math.max(polyMaxX[p], a.x);
+                polyMaxY[p] = Math.max(polyMaxY[p], a.y);
+            }
+            minX = Math.min(minX, polyMinX[p]);
+            minY = Math.min(minY, polyMinY[p]);
+            maxX = Math.max(maxX, polyMaxX[p]);
+            maxY = Math.max(maxY, polyMaxY[p]);
+        }
+        if (edgeCount == 0) {
+            originX = originY = 0;
+            cols = rows = 0;
+            cellStart = new int[1];
+            cellEdges = new int[0];
+            return;
+        }
+        originX = minX;
+        originY = minY;
+        cols = (int) ((maxX - minX) / cellSize) + 1;
+        rows = (int) ((maxY - minY) / cellSize) + 1;
+
+        // count the edges overlapping each cell, then fill them in
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            for (int cy = edgeRow0(i); cy <= edgeRow1(i); cy++) {
+                for (int cx = edgeCol0(i); cx <= edgeCol1(i); cx++) {
+                    cellStart[cy * cols + cx + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellEdges = new int[cellStart[cols * rows]];
+        int[] fill = Arrays.copyOf(cellStart, cellStart.length);
+        for (int i = 0; i < edgeCount; i++) {
+            for (int cy = edgeRow0(i); cy <= edgeRow1(i); cy++) {
+                for (int cx = edgeCol0(i); cx <= edgeCol1(i); cx++) {
+                    cellEdges[fill[cy * cols + cx]++] = i;
+                }
+            }
+        }
+    }
+
+    int edgeCount() {
+        return ex0.length;
+    }
+
+    /**
+     * Returns the column containing an x coordinate, clamped to the grid.
+     */
+    int col(double x) {
+        return (int) Math.max(0, Math.min(cols - 1, Math.floor((x - originX) / cellSize)));
+    }
+
+    /**
+     * Returns the row containing a y coordinate, clamped to the grid.
+     */
+    int row(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - originY) / cellSize)));
+    }
+
+    private int edgeCol0(int e) {
+        return col(Math.min(ex0[e], ex1[e]));
+    }
+
+    private int edgeCol1(int e) {
+        return col(Math.max(ex0[e], ex1[e]));
+    }
+
+    private int edgeRow0(int e) {
+        return row(Math.min(ey0[e], ey1[e]));
+    }
+
+    private int edgeRow1(int e) {
+        return row(Math.max(ey0[e], ey1[e]));
+    }
+}
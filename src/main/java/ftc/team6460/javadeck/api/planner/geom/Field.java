@@ -25,8 +25,10 @@
 package ftc.team6460.javadeck.api.planner.geom;
 
 import ftc.team6460.javadeck.api.planner.ImmutableRobotPosition;
+import ftc.team6460.javadeck.api.planner.MovePlan;
 import ftc.team6460.javadeck.api.planner.ObstacleException;
 import ftc.team6460.javadeck.api.planner.RelativePosition;
+import ftc.team6460.javadeck.api.planner.RobotPosition;
 
 import java.io.Serializable;
 import java.util.*;
@@ -38,13 +40,233 @@ import java.util.*;
  * such that a value of 1 describes an offset of 1mm.
  */
 public class Field {
-    private final Set<Zone> zones = new HashSet<>();
-    private final Set<Waypoint> waypoints = new HashSet<>();
+    // in order of addition; a zone's position here is its bit in Waypoint#getZoneMask
+    private final List<Zone> zones = new ArrayList<>();
+    private final WaypointTable waypoints = new WaypointTable();
+
+    // roughly a tile of the FTC field, so a nearest query usually touches a handful of cells
+    private static final long INDEX_CELL_SIZE = 500;
+    private final WaypointGrid index = new WaypointGrid(INDEX_CELL_SIZE);
+
+    private static final long DEFAULT_CLEARANCE_CELL_SIZE = 10;
+
+    private long minimumClearance = 0;
+    private long clearanceCellSize = DEFAULT_CLEARANCE_CELL_SIZE;
+    // built lazily, and dropped whenever the zones or clearance settings change.
+    private ClearanceMap clearanceMap;
+
+    private boolean pathSmoothing = true;
+
+    private volatile SearchListener searchListener;
+
+    private static final long EDGE_GRID_CELL_SIZE = 250;
+    // built lazily, and dropped whenever the zones change.
+    private EdgeGrid blockingEdges, obstacleEdges;
+    private RayCaster rayCaster;
+    // null unless a footprint is set.
+    private FootprintChecker footprint;
+    private long footprintWidth, footprintLength;
+
+    private final ConnectedComponents components = new ConnectedComponents();
 
     public boolean addZone(Zone zone) {
+        if (zones.contains(zone)) {
+            return false;
+        }
+        clearanceMap = null;
+        blockingEdges = obstacleEdges = null;
+        rayCaster = null;
+        footprint = null;
         return zones.add(zone);
     }
 
+    /**
+     * Sets the clearance that waypoints and connections must keep from obstacle and illegal zones. This is usually half
+     * the robot's width, so that the planner does not route the robot through gaps it cannot fit through.
+     * <p>
+     * This only applies to waypoints and connections added after this call.
+     *
+     * @param minimumClearance The required clearance, in mm. 0 treats the robot as a point.
+     * @param cellSize         The resolution of the clearance map used for these checks, in mm.
+     */
+    public void setMinimumClearance(long minimumClearance, long cellSize) {
+        if (minimumClearance < 0 || cellSize <= 0) {
+            throw new IllegalArgumentException("clearance must be non-negative, and cell size positive");
+        }
+        if (minimumClearance != this.minimumClearance || cellSize != this.clearanceCellSize) {
+            clearanceMap = null;
+        }
+        this.minimumClearance = minimumClearance;
+        this.clearanceCellSize = cellSize;
+    }
+
+    /**
+     * Sets the clearance that waypoints and connections must keep from obstacle and illegal zones, using a clearance map with the default resolution.
+     *
+     * @param minimumClearance The required clearance, in mm.
+     * @see Field#setMinimumClearance(long, long)
+     */
+    public void setMinimumClearance(long minimumClearance) {
+        setMinimumClearance(minimumClearance, DEFAULT_CLEARANCE_CELL_SIZE);
+    }
+
+    /**
+     * Sets the footprint of the robot, so that connections are checked against the whole rectangle swept as the robot
+     * drives along them facing forwards, rather than against the centre line alone. Turning in place at a waypoint is not
+     * checked.
+     * <p>
+     * This only applies to connections added after this call.
+     *
+     * @param width  The width of the robot, across its direction of travel, in mm. 0 disables the check.
+     * @param length The length of the robot, along its direction of travel, in mm.
+     */
+    public void setRobotFootprint(long width, long length) {
+        if (width < 0 || length < 0) {
+            throw new IllegalArgumentException("footprint dimensions must be non-negative");
+        }
+        this.footprintWidth = width;
+        this.footprintLength = length;
+        this.footprint = null;
+    }
+
+    // the footprint checker for the current zones, or null if no footprint is set.
+    private FootprintChecker getFootprintChecker() {
+        if (footprintWidth == 0) {
+            return null;
+        }
+        FootprintChecker checker = footprint;
+        if (checker == null) {
+            EdgeGrid edges = blockingEdges;
+            if (edges == null) {
+                List<Point2D[]> polys = new ArrayList<>();
+                for (Zone z : zones) {
+                    if (z.isBlocking()) {
+                        polys.add(z.vertices());
+                    }
+                }
+                edges = new EdgeGrid(polys, EDGE_GRID_CELL_SIZE);
+                blockingEdges = edges;
+            }
+            checker = new FootprintChecker(edges, footprintWidth, footprintLength);
+            footprint = checker;
+        }
+        return checker;
+    }
+
+    /**
+     * Casts a ray against the edges of the obstacle zones of this field, as a simulated range sensor would see them.
+     * Illegal zones are not physical, and are not hit.
+     *
+     * @param x        The x coordinate of the ray's origin, in mm.
+     * @param y        The y coordinate of the ray's origin, in mm.
+     * @param theta    The absolute direction of the ray, in radians counterclockwise from the x axis.
+     * @param maxRange The range beyond which hits are ignored, in mm.
+     * @return The distance to the first obstacle edge, or {@link Double#POSITIVE_INFINITY} if there is none in range.
+     */
+    public double castRay(double x, double y, double theta, double maxRange) {
+        return getRayCaster().cast(x, y, Math.cos(theta), Math.sin(theta), maxRange);
+    }
+
+    /**
+     * Casts a fan of rays from one pose, as with {@link Field#castRay(double, double, double, double)}.
+     *
+     * @param x        The x coordinate of the rays' origin, in mm.
+     * @param y        The y coordinate of the rays' origin, in mm.
+     * @param heading  The absolute heading of the sensor, in radians counterclockwise from the x axis.
+     * @param angles   The direction of each ray relative to the heading, in radians, where positive values are right of
+     *                 the heading and negative values are left, as with {@link RelativePosition}.
+     * @param maxRange The range beyond which hits are ignored, in mm.
+     * @param out      Receives the distance for each ray, or {@link Double#POSITIVE_INFINITY} for a miss. Must be at least
+     *                 as long as <code>angles</code>.
+     */
+    public void castRays(double x, double y, double heading, double[] angles, double maxRange, double[] out) {
+        if (out.length < angles.length) {
+            throw new IllegalArgumentException("output array too short: " + out.length + " < " + angles.length);
+        }
+        RayCaster caster = getRayCaster();
+        for (int i = 0; i < angles.length; i++) {
+            double theta = heading - angles[i];
+            out[i] = caster.cast(x, y, Math.cos(theta), Math.sin(theta), maxRange);
+        }
+    }
+
+    /**
+     * Builds a likelihood field over the obstacle zones of this field, for scoring range sensor readings. Illegal zones are
+     * not physical, and are left out.
+     *
+     * @param cellSize          The resolution of the field, in mm.
+     * @param sigma             The standard deviation of a range reading, in mm.
+     * @param randomProbability The likelihood given to a beam that ends far from any obstacle, in [0, 1); this keeps one
+     *                          spurious reading from ruling out a pose.
+     */
+    public LikelihoodField createLikelihoodField(long cellSize, double sigma, double randomProbability) {
+        List<Point2D[]> polys = new ArrayList<>();
+        long minX = 0, minY = 0, maxX = 0, maxY = 0;
+        boolean first = true;
+        for (Zone z : zones) {
+            if (z.getMode() == ZoneMode.ZONE_OBSTACLE) {
+                for (Point2D p : z.vertices()) {
+                    minX = first ? p.x : Math.min(minX, p.x);
+                    minY = first ? p.y : Math.min(minY, p.y);
+                    maxX = first ? p.x : Math.max(maxX, p.x);
+                    maxY = first ? p.y : Math.max(maxY, p.y);
+                    first = false;
+                }
+                polys.add(z.vertices());
+            }
+        }
+        // beyond four sigma, the gaussian is lost under the random floor anyway
+        long margin = (long) Math.ceil(4 * sigma) + cellSize;
+        return new LikelihoodField(polys, minX - margin, minY - margin, maxX + margin, maxY + margin, cellSize,
+                sigma, randomProbability);
+    }
+
+    private RayCaster getRayCaster() {
+        RayCaster caster = rayCaster;
+        if (caster == null) {
+            EdgeGrid edges = obstacleEdges;
+            if (edges == null) {
+                List<Point2D[]> polys = new ArrayList<>();
+                for (Zone z : zones) {
+                    if (z.getMode() == ZoneMode.ZONE_OBSTACLE) {
+                        polys.add(z.vertices());
+                    }
+                }
+                edges = new EdgeGrid(polys, EDGE_GRID_CELL_SIZE);
+                obstacleEdges = edges;
+            }
+            caster = new RayCaster(edges);
+            rayCaster = caster;
+        }
+        return caster;
+    }
+
+    /**
+     * Returns the clearance map for the current zones of this field. The map is computed on first use, and reused until
+     * zones are added or the clearance settings change.
+     */
+    public ClearanceMap getClearanceMap() {
+        ClearanceMap map = clearanceMap;
+        if (map == null) {
+            long minX = 0, minY = 0, maxX = 0, maxY = 0;
+            boolean first = true;
+            for (Zone z : zones) {
+                for (Point2D p : z.vertices) {
+                    minX = first ? p.x : Math.min(minX, p.x);
+                    minY = first ? p.y : Math.min(minY, p.y);
+                    maxX = first ? p.x : Math.max(maxX, p.x);
+                    maxY = first ? p.y : Math.max(maxY, p.y);
+                    first = false;
+                }
+            }
+            // pad so that clearance is exact, rather than clamped, wherever it could still matter.
+            long margin = minimumClearance + 2 * clearanceCellSize;
+            map = new ClearanceMap(zones, minX - margin, minY - margin, maxX + margin, maxY + margin, clearanceCellSize);
+            clearanceMap = map;
+        }
+        return map;
+    }
+
     /**
      * Constructs a new field.
      *
@@ -52,7 +274,27 @@ public class Field {
      */
 
     public Field(Zone... zones) {
-        Collections.addAll(this.zones, zones);
+        for (Zone z : zones) {
+            addZone(z);
+        }
+    }
+
+    /**
+     * Returns this field's waypoint at a position, or a new waypoint there if this field has none. A new waypoint is not
+     * part of this field until passed to {@link Field#addWaypoint(Waypoint)}. This may be called from several threads at once.
+     *
+     * @param pos The position of the waypoint.
+     * @throws IllegalArgumentException If a coordinate does not fit in 32 bits.
+     */
+    public Waypoint getWaypoint(Point2D pos) {
+        Waypoint w = waypoints.get(pos);
+        return (w != null) ? w : new Waypoint(pos);
+    }
+
+    // the instance of an equal waypoint that is on this field, or w itself if none is.
+    private Waypoint onField(Waypoint w) {
+        Waypoint mine = waypoints.get(w.getPos());
+        return (mine != null) ? mine : w;
     }
 
     /**
@@ -60,27 +302,37 @@ public class Field {
      *
      * @param waypoint The waypoint to add
      * @throws DuplicateWaypointException If a waypoint at exactly this location already exists.
-     * @throws ObstacleException          If the waypoint being added lies within a forbidden zone.
+     * @throws ObstacleException          If the waypoint being added lies within an (inflated) obstacle zone, or closer to a forbidden zone than the minimum clearance.
      */
     public void addWaypoint(Waypoint waypoint) throws DuplicateWaypointException, ObstacleException {
-        if (waypoints.contains(waypoint)) {
+        if (waypoints.get(waypoint.getPos()) != null) {
             throw new DuplicateWaypointException("Duplicate: " + waypoint.toString());
         }
+        if (minimumClearance > 0 && getClearanceMap().getClearance(waypoint.getPos()) < minimumClearance) {
+            throw new ObstacleException("Waypoint is too close to an obstacle or illegal zone.");
+        }
 
         for (Zone z : zones) {
+            if (z.mode == ZoneMode.ZONE_OBSTACLE && z.getInflated().contains(waypoint.getPos())) {
+                throw new ObstacleException("This waypoint is contained within a zone tagged as an obstacle.");
+            }
+        }
+
+        if (waypoints.putIfAbsent(waypoint) != null) {
+            throw new DuplicateWaypointException("Duplicate: " + waypoint.toString());
+        }
+        for (int i = 0; i < zones.size(); i++) {
+            Zone z = zones.get(i);
             if (z.contains(waypoint.getPos())) {
                 // no need for check as waypoint would be in Field#waypoints.
                 z.addWaypoint(waypoint);
-                waypoint.addZone(z);
+                waypoint.addZone(z, i);
             }
         }
-        waypoints.add(waypoint);
-
-
+        components.add(waypoint);
+        index.add(waypoint);
     }
 
-    // O(N) but who cares?
-
     /**
      * Returns the nearest waypoint to the given point, using a euclidean metric.
      *
@@ -88,16 +340,30 @@ public class Field {
      * @return The closest waypoint, or <code>null</code> if there are no waypoints on this field.
      */
     public Waypoint getNearest(Point2D pos) {
-        Waypoint best = null;
-        double bestDistance = Double.POSITIVE_INFINITY;
-        for (Waypoint w : waypoints) {
-            double t = GeometryUtils.euclideanDistance(pos, w.getPos());
-            if (t < bestDistance) {
-                bestDistance = t;
-                best = w;
-            }
-        }
-        return best;
+        List<Waypoint> nearest = index.nearest(pos, 1);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Returns the <code>k</code> waypoints nearest to the given point, nearest first.
+     *
+     * @param pos The point for which to find the closest waypoints.
+     * @param k   The number of waypoints wanted.
+     * @return A new list of up to <code>k</code> waypoints, shorter only if the field holds fewer than <code>k</code>.
+     */
+    public List<Waypoint> getKNearest(Point2D pos, int k) {
+        return index.nearest(pos, k);
+    }
+
+    /**
+     * Returns all waypoints no further than <code>radius</code> from the given point, nearest first.
+     *
+     * @param pos    The centre of the search.
+     * @param radius The maximum distance, in millimeters.
+     * @return A new list of the waypoints found, which may be empty.
+     */
+    public List<Waypoint> getWithinRadius(Point2D pos, double radius) {
+        return index.withinRadius(pos, radius);
     }
 
     // Dijkstra's algorithm
@@ -111,31 +377,77 @@ public class Field {
      * @throws ObstacleException If no path is found.
      */
     public List<Waypoint> findPath(Waypoint start, Waypoint end) throws ObstacleException {
+        start = onField(start);
+        end = onField(end);
+        search(start, end);
+        AbstractList<Waypoint> path = new ArrayList<>();
+        for (Waypoint t = start; t != end; t = t.tag.prev) {
+            path.add(t);
+        }
+        path.add(end);
+        return path;
+    }
+
+    /**
+     * Enumerates loopless paths between two waypoints, shortest first, using Yen's algorithm. Paths are only computed as
+     * they are asked for, so alternative routes cost nothing until they are needed. The field must not be modified while
+     * the returned iterator is in use.
+     *
+     * @param start The waypoint at which to start.
+     * @param end   The waypoint at which to end.
+     * @return An iterator over the paths; it has no elements if the waypoints are not connected.
+     */
+    public KShortestPaths findPaths(Waypoint start, Waypoint end) {
+        start = onField(start);
+        end = onField(end);
+        return new KShortestPaths(start, end, isReachable(start, end));
+    }
+
+    // Searches backwards from end, so that following tag.prev from start walks the shortest path in forward order.
+    private void search(Waypoint start, Waypoint end) throws ObstacleException {
+        // read once; when null, the counters below are all that instrumentation costs
+        SearchListener listener = searchListener;
+        long startTime = (listener == null) ? 0 : System.nanoTime();
+        int expanded = 0, pushes = 0, decreaseKeys = 0;
+        // fail fast, rather than exploring all of start's component
+        if (!isReachable(start, end)) {
+            report(listener, startTime, start, end, false, 0, 0, 0);
+            throw new ObstacleException("No path found.");
+        }
         // tradeoff: decrease priority is not well implemented in the Java API, so we'll just do it in O(V) instead, manually.
         // This should only happen rarely.
         for (Waypoint w : waypoints) {
-            w.tag = new Waypoint.Tag();
+            if (w.tag == null) {
+                w.tag = new Waypoint.Tag();
+            } else {
+                w.tag.reset();
+            }
         }
         PriorityQueue<Waypoint> queue = new PriorityQueue<Waypoint>(10, new WaypointComparator());
         // we'll do a backwards search so we can extract the path in forward order relative to parameters start and end.
         end.tag.dist = 0;
         end.tag.inQueue = true;
         queue.add(end);
+        pushes++;
 
         while (!queue.isEmpty()) {
             Waypoint u = queue.poll();
+            expanded++;
             //System.out.println("u = " + u);
 
-            for (Waypoint v : u.getNeighbors()) {
-                double alt = u.tag.dist + u.distanceTo(v);
+            for (int i = 0; i < u.getDegree(); i++) {
+                Waypoint v = u.getNeighbor(i);
+                double alt = u.tag.dist + u.getEdgeLength(i);
                 if (alt < v.tag.dist) {
                     if (v.tag.inQueue) {
                         queue.remove(v);
+                        decreaseKeys++;
                         //System.out.println("boo");
                     }
                     v.tag.dist = alt;
                     v.tag.prev = u;
                     queue.add(v);
+                    pushes++;
                     v.tag.inQueue = true;
                 }
 
@@ -145,18 +457,39 @@ public class Field {
             }
         }
 
-        AbstractList<Waypoint> path = new ArrayList<>();
-        Waypoint t = start;
-        //System.out.println("t = " + t);
-        do {
-            path.add(t);
-            t = t.tag.prev;
-            if (t == null) {
-                throw new ObstacleException("No path found.");
+        boolean found = start == end || start.tag.prev != null;
+        report(listener, startTime, start, end, found, expanded, pushes, decreaseKeys);
+        if (!found) {
+            throw new ObstacleException("No path found.");
+        }
+    }
+
+    private static void report(SearchListener listener, long startTime, Waypoint start, Waypoint end, boolean found,
+                               int expanded, int pushes, int decreaseKeys) {
+        if (listener == null) {
+            return;
+        }
+        long latency = System.nanoTime() - startTime;
+        int pathLength = 0;
+        double pathCost = Double.POSITIVE_INFINITY;
+        if (found) {
+            pathLength = 1;
+            for (Waypoint t = start; t != end; t = t.tag.prev) {
+                pathLength++;
             }
-        } while (t != end);
-        path.add(end);
-        return path;
+            pathCost = (start == end) ? 0 : start.tag.dist;
+        }
+        listener.searchCompleted(new SearchStats(found, expanded, pushes, decreaseKeys, pathLength, pathCost, latency));
+    }
+
+    /**
+     * Sets a listener to be told about every shortest-path search this field runs, for profiling. When no listener is set,
+     * searches are not timed and no statistics are allocated.
+     *
+     * @param listener The listener, such as a {@link SearchMetrics}, or null to turn instrumentation off.
+     */
+    public void setSearchListener(SearchListener listener) {
+        this.searchListener = listener;
     }
 
     /**
@@ -165,7 +498,11 @@ public class Field {
      * @param w The waypoint to remove.
      */
     public void removeWaypoint(Waypoint w) {
-        waypoints.remove(w);
+        w = onField(w);
+        if (waypoints.remove(w.getPos()) != null) {
+            index.remove(w);
+            components.remove(w);
+        }
         Set<Waypoint> neighbors = new HashSet<>();
         neighbors.addAll(w.getNeighbors());
         for (Waypoint n : neighbors) {
@@ -177,33 +514,140 @@ public class Field {
     /**
      * Adds a graph adjacency between two waypoints, so that {@link Field#findPath(Waypoint, Waypoint)} can take a path between these two waypoints.
      *
-     * @throws ObstacleException If the connection crosses an obstacle or illegal zone.
+     * @throws ObstacleException If the connection crosses an (inflated) obstacle or illegal zone, or passes closer to one than the minimum clearance.
      */
     public void addConnection(Waypoint w1, Waypoint w2) throws ObstacleException {
         if (w1.equals(w2)) {
             throw new IllegalArgumentException("connection to self");
         }
-        Segment s = new Segment(w1.getPos(), w2.getPos());
+        String blockage = findBlockage(w1.getPos(), w2.getPos());
+        if (blockage != null) {
+            throw new ObstacleException(blockage);
+        }
+        w1 = onField(w1);
+        w2 = onField(w2);
+        w1.addNeighbor(w2);
+        w2.addNeighbor(w1);
+        components.connect(w1, w2);
+    }
+
+    /**
+     * Checks whether any path exists between two waypoints. This takes near-constant time, except for the first check
+     * after removing a waypoint that may have split the field, which takes time linear in the size of the field.
+     *
+     * @return True if {@link Field#findPath(Waypoint, Waypoint)} would find a path.
+     */
+    public boolean isReachable(Waypoint start, Waypoint end) {
+        return start.equals(end) || components.connected(onField(start), onField(end), waypoints);
+    }
+
+    /**
+     * Checks whether any path exists between the waypoints nearest to two locations.
+     *
+     * @return True if {@link Field#findPath(ImmutableRobotPosition, ImmutableRobotPosition)} would find a path.
+     */
+    public boolean isReachable(ImmutableRobotPosition start, ImmutableRobotPosition end) {
+        Waypoint st = getNearest(Point2D.fromRobotPosition(start));
+        Waypoint fin = getNearest(Point2D.fromRobotPosition(end));
+        return st != null && fin != null && isReachable(st, fin);
+    }
+
+    /**
+     * Checks whether the robot may travel in a straight line between two points, without crossing an (inflated) obstacle
+     * or illegal zone, or passing closer to one than the minimum clearance. The points need not be waypoints.
+     */
+    public boolean hasLineOfSight(Point2D p0, Point2D p1) {
+        return findBlockage(p0, p1) == null;
+    }
+
+    // returns why a straight move between the points is not allowed, or null if it is.
+    private String findBlockage(Point2D p0, Point2D p1) {
+        Segment s = new Segment(p0, p1);
         for (Zone z : zones) {
-            if (z.mode == ZoneMode.ZONE_OBSTACLE || z.mode == ZoneMode.ZONE_ILLEGAL) {
-                if (z.intersects(s)) {
-                    throw new ObstacleException("Connection crosses an obstacle or illegal zone");
+            if (z.isBlocking()) {
+                // bounding box is checked first, so distant zones are cheap
+                if (z.getInflated().intersects(s)) {
+                    return "Connection crosses an obstacle or illegal zone";
                 }
             }
         }
-        w1.addNeighbor(w2);
-        w2.addNeighbor(w1);
+        if (minimumClearance > 0 && !getClearanceMap().hasClearance(p0, p1, minimumClearance)) {
+            return "Connection passes too close to an obstacle or illegal zone";
+        }
+        FootprintChecker checker = getFootprintChecker();
+        if (checker != null && checker.collides(p0, p1)) {
+            return "Robot footprint collides with an obstacle or illegal zone along connection";
+        }
+        return null;
     }
 
     /**
-     * Gets an iterable set of the waypoints, in no particular order.
+     * Removes waypoints from a path wherever the robot can instead drive straight past them, so that it does not stop and
+     * turn at every node of a lattice. The endpoints are always kept.
+     *
+     * @param path A path, such as one returned by {@link Field#findPath(Waypoint, Waypoint)}.
+     * @return A new list, containing the waypoints of the path that must still be visited, in order.
+     */
+    public List<Waypoint> smoothPath(List<Waypoint> path) {
+        Point2D[] points = new Point2D[path.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = path.get(i).getPos();
+        }
+        boolean[] keep = pullString(points);
+        List<Waypoint> rV = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            if (keep[i]) {
+                rV.add(path.get(i));
+            }
+        }
+        return rV;
+    }
+
+    // Greedy string pulling: from each kept point, skip ahead for as long as there is line of sight. One check per point.
+    private boolean[] pullString(Point2D[] points) {
+        boolean[] keep = new boolean[points.length];
+        if (points.length == 0) {
+            return keep;
+        }
+        keep[0] = true;
+        keep[points.length - 1] = true;
+        Point2D anchor = points[0];
+        for (int i = 1; i < points.length - 1; i++) {
+            if (!hasLineOfSight(anchor, points[i + 1])) {
+                keep[i] = true;
+                anchor = points[i];
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Sets whether {@link Field#findPath(ImmutableRobotPosition, ImmutableRobotPosition)} removes redundant intermediate
+     * moves from its result. Enabled by default.
+     *
+     * @see Field#smoothPath(List)
+     */
+    public void setPathSmoothing(boolean pathSmoothing) {
+        this.pathSmoothing = pathSmoothing;
+    }
+
+    /**
+     * Gets an iterable, read-only view of the waypoints, in no particular order. It must not be iterated while waypoints are added or removed.
      */
     public Iterable<Waypoint> getWaypoints() {
-        return Collections.unmodifiableSet(waypoints);
+        return waypoints;
     }
 
     /**
-     * Finds the shortest path (by Euclidean metric) between the two endpoints, using Dijkstra's Algorithm.
+     * Returns the number of waypoints on this field.
+     */
+    public int getWaypointCount() {
+        return waypoints.size();
+    }
+
+    /**
+     * Finds the shortest path (by Euclidean metric) between the two endpoints, using Dijkstra's Algorithm. Unless disabled
+     * with {@link Field#setPathSmoothing(boolean)}, waypoints that the robot can drive straight past are then dropped.
      *
      * @param start The location at which to start.
      * @param end   The location at which to end.
@@ -211,25 +655,76 @@ public class Field {
      * @throws ObstacleException If no path is found.
      */
     public List<RelativePosition> findPath(ImmutableRobotPosition start, ImmutableRobotPosition end) throws ObstacleException {
-        Waypoint st = getNearest(Point2D.fromRobotPosition(start));
-        Waypoint fin = getNearest(Point2D.fromRobotPosition(end));
-        List<RelativePosition> rV = new ArrayList<>();
-        List<Waypoint> waypoints = findPath(st, fin);
-        ImmutableRobotPosition current = start;
-        for (Waypoint w : waypoints) {
-            ImmutableRobotPosition n = w.getPos().getAsRobotPos();
-            RelativePosition rp = RelativePosition.between(current, n);
-            rV.add(rp);
-            current = rp.apply(current).materialize();
+        return findPath(start, end, new MovePlan()).asList();
+    }
 
+    /**
+     * Finds the shortest path between the two endpoints, as per {@link Field#findPath(ImmutableRobotPosition, ImmutableRobotPosition)},
+     * writing the moves into an existing plan rather than allocating a list of them.
+     *
+     * @param start The location at which to start.
+     * @param end   The location at which to end.
+     * @param plan  The plan to reset and fill in.
+     * @return The plan passed in.
+     * @throws ObstacleException If no path is found.
+     */
+    public MovePlan findPath(ImmutableRobotPosition start, ImmutableRobotPosition end, MovePlan plan) throws ObstacleException {
+        Point2D startPos = Point2D.fromRobotPosition(start);
+        Point2D endPos = Point2D.fromRobotPosition(end);
+        Waypoint st = getNearest(startPos);
+        Waypoint fin = getNearest(endPos);
+        search(st, fin);
+        plan.reset(start);
+        // walk the search tree from st to fin, string-pulling as we go; see pullString.
+        Point2D anchor = startPos;
+        for (Waypoint w = st; w != null; w = (w == fin) ? null : w.tag.prev) {
+            Point2D next = (w == fin) ? endPos : w.tag.prev.getPos();
+            if (!pathSmoothing || !hasLineOfSight(anchor, next)) {
+                ImmutableRobotPosition n = w.getPos().getAsRobotPos();
+                plan.moveTo(n.getX(), n.getY());
+                anchor = w.getPos();
+            }
         }
-        rV.add(RelativePosition.between(current, end));
-        // finding will return both endpoints in correct order
-        //List<Waypoint>
-        return rV;
+        plan.moveTo(end.getX(), end.getY());
+        return plan;
+    }
+
+    /**
+     * Writes the moves to drive along part of a route into a plan: from a start position, through
+     * <code>route[from...]</code>, and on to an end position. Unless disabled with {@link Field#setPathSmoothing(boolean)},
+     * waypoints that the robot can drive straight past are dropped, as with
+     * {@link Field#findPath(ImmutableRobotPosition, ImmutableRobotPosition)}.
+     *
+     * @param route    A route, such as one from {@link Field#findPaths(Waypoint, Waypoint)}.
+     * @param from     The index of the first waypoint of the route to drive through.
+     * @param start    The location at which to start.
+     * @param end      The location at which to end.
+     * @param plan     The plan to reset and fill in.
+     * @param moveEnds Receives, for each move of the plan, the index into the route of the waypoint it ends at, or
+     *                 <code>route.size()</code> for the move to <code>end</code>; at least
+     *                 <code>route.size() - from + 1</code> long.
+     * @return The plan passed in.
+     */
+    public MovePlan planRoute(List<Waypoint> route, int from, RobotPosition start, ImmutableRobotPosition end,
+                              MovePlan plan, int[] moveEnds) {
+        Point2D endPos = Point2D.fromRobotPosition(end);
+        plan.reset(start);
+        Point2D anchor = Point2D.fromRobotPosition(start);
+        for (int i = from; i < route.size(); i++) {
+            Point2D next = (i + 1 < route.size()) ? route.get(i + 1).getPos() : endPos;
+            if (!pathSmoothing || !hasLineOfSight(anchor, next)) {
+                ImmutableRobotPosition n = route.get(i).getPos().getAsRobotPos();
+                moveEnds[plan.size()] = i;
+                plan.moveTo(n.getX(), n.getY());
+                anchor = route.get(i).getPos();
+            }
+        }
+        moveEnds[plan.size()] = route.size();
+        plan.moveTo(end.getX(), end.getY());
+        return plan;
     }
 
-    enum ZoneMode {
+    public enum ZoneMode {
         ZONE_COMMON, ZONE_ALLIANCE, ZONE_PERSONAL, ZONE_ILLEGAL, ZONE_OBSTACLE
     }
 
@@ -262,6 +757,19 @@ public class Field {
          *                                                                           well-defined interior (as per odd-even rule). However, undefined behavior may result from use of such polygons.
          */
         public Zone(ZoneMode mode, Point2D[] vertices) throws DegeneratePolygonException {
+            this(mode, vertices, 0);
+        }
+
+        /**
+         * Constructs a new zone, inflated by a given radius when checking waypoints and connections against it.
+         *
+         * @param mode            The zone mode to apply
+         * @param vertices        A set of vertices, describing the polygon. Must be in consistent order (clockwise OR counterclockwise), with all elements unique.
+         * @param inflationRadius The distance, in mm, by which to grow this zone in every direction.
+         * @throws ftc.team6460.javadeck.api.planner.geom.DegeneratePolygonException If the polygon is degenerate.
+         * @see Zone#Zone(ZoneMode, Point2D[])
+         */
+        public Zone(ZoneMode mode, Point2D[] vertices, long inflationRadius) throws DegeneratePolygonException {
             this.mode = mode;
             this.vertices = vertices.clone();
             // check unique vertices:
@@ -271,6 +779,39 @@ public class Field {
                     throw new DegeneratePolygonException("Vertices are not unique: " + vtx.toString());
                 }
             }
+            setInflationRadius(inflationRadius);
+        }
+
+        /**
+         * Sets the distance by which this zone is grown (as a Minkowski sum with a disc) when {@link Field} checks waypoints
+         * and connections against it. Typically half the robot's width, so that the robot's edges, rather than its centre,
+         * stay out of the zone. The inflated outline is computed here once, and reused for every check.
+         *
+         * @param inflationRadius The inflation radius, in mm.
+         */
+        public void setInflationRadius(long inflationRadius) {
+            if (inflationRadius < 0) {
+                throw new IllegalArgumentException("negative inflation radius");
+            }
+            InflatedPolygon current = inflated;
+            if (current == null || current.getRadius() != inflationRadius) {
+                inflated = new InflatedPolygon(vertices, inflationRadius);
+            }
+        }
+
+        public long getInflationRadius() {
+            return inflated.getRadius();
+        }
+
+        /**
+         * Returns the vertices of this zone after inflation.
+         */
+        public Point2D[] getInflatedVertices() {
+            return inflated.getVertices().clone();
+        }
+
+        InflatedPolygon getInflated() {
+            return inflated;
         }
 
 
@@ -285,6 +826,19 @@ public class Field {
             return GeometryUtils.checkWindingNumber(point, vertices) != 0;
         }
 
+        public ZoneMode getMode() {
+            return mode;
+        }
+
+        // true for zones that the robot may never enter or cross.
+        boolean isBlocking() {
+            return mode == ZoneMode.ZONE_OBSTACLE || mode == ZoneMode.ZONE_ILLEGAL;
+        }
+
+        Point2D[] vertices() {
+            return vertices;
+        }
+
         public boolean intersects(Segment s) {
             for (int i = 0; i < vertices.length; i++) {
                 if (GeometryUtils.intersect2D(s, new Segment(vertices[i], vertices[(i + 1) % vertices.length])) != 0) {
@@ -295,5 +849,7 @@ public class Field {
         }
 
         private final Point2D[] vertices;
+
+        private volatile InflatedPolygon inflated;
     }
 }
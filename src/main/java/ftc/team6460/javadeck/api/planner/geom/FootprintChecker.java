@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.Arrays;
+
+/**
+ * Checks the area swept by a rectangular robot footprint, driven straight along a segment, against the blocking zones of
+ * a field. The swept area is itself a rectangle, oriented along the segment; it is tested against each zone edge with the
+ * separating axis theorem, which is exact for a rectangle and a segment. Zones need not be convex, as a zone that no edge
+ * crosses is either fully inside the rectangle or fully around it, and one point decides which.
+ * <p>
+ * Zones are rejected on their bounding boxes first, and then only the edges in the grid cells under the swept rectangle
+ * are tested. Checks are synchronized, as they share scratch space used to visit each edge once per check.
+ */
+final class FootprintChecker {
+    private final long width;
+    private final long length;
+    private final EdgeGrid grid;
+
+    // stamp per edge, so an edge spanning several cells is only tested once per check
+    private final int[] visited;
+    private int stamp = 0;
+
+    FootprintChecker(EdgeGrid grid, long width, long length) {
+        this.grid = grid;
+        this.width = width;
+        this.length = length;
+        this.visited = new int[grid.edgeCount()];
+    }
+
+    /**
+     * Checks whether the footprint, driven from p0 to p1 while facing along the segment, touches a blocking zone.
+     */
+    synchronized boolean collides(Point2D p0, Point2D p1) {
+        EdgeGrid g = grid;
+        if (g.polygons.length == 0) {
+            return false;
+        }
+        double dx = p1.x - p0.x, dy = p1.y - p0.y;
+        double len = Math.hypot(dx, dy);
+        // unit axes of the swept rectangle; a zero-length move keeps the robot's own axes as given
+        double ux = len == 0 ? 1 : dx / len, uy = len == 0 ? 0 : dy / len;
+        double vx = -uy, vy = ux;
+        double cx = (p0.x + p1.x) / 2.0, cy = (p0.y + p1.y) / 2.0;
+        double halfU = (len + length) / 2.0, halfV = width / 2.0;
+
+        // axis-aligned bounds of the swept rectangle
+        double extX = Math.abs(ux) * halfU + Math.abs(vx) * halfV;
+        double extY = Math.abs(uy) * halfU + Math.abs(vy) * halfV;
+        double minX = cx - extX, maxX = cx + extX, minY = cy - extY, maxY = cy + extY;
+
+        // early out: no zone's bounding box is near
+        boolean near = false;
+        for (int z = 0; z < g.polygons.length && !near; z++) {
+            near = g.polyMinX[z] <= maxX && g.polyMaxX[z] >= minX && g.polyMinY[z] <= maxY && g.polyMaxY[z] >= minY;
+        }
+        if (!near) {
+            return false;
+        }
+
+        if (++stamp == 0) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        int cx0 = g.col(minX), cx1 = g.col(maxX), cy0 = g.row(minY), cy1 = g.row(maxY);
+        for (int gy = cy0; gy <= cy1; gy++) {
+            for (int gx = cx0; gx <= cx1; gx++) {
+                int c = gy * g.cols + gx;
+                for (int k = g.cellStart[c]; k < g.cellStart[c + 1]; k++) {
+                    int e = g.cellEdges[k];
+                    if (visited[e] != stamp) {
+                        visited[e] = stamp;
+                        if (edgeOverlaps(e, cx, cy, ux, uy, vx, vy, halfU, halfV)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+
+        // no edge crosses the rectangle, so each nearby zone either contains it or lies inside it.
+        Point2D centre = new Point2D(Math.round(cx), Math.round(cy));
+        for (int z = 0; z < g.polygons.length; z++) {
+            if (g.polyMinX[z] <= maxX && g.polyMaxX[z] >= minX && g.polyMinY[z] <= maxY && g.polyMaxY[z] >= minY) {
+                if (GeometryUtils.checkWindingNumber(centre, g.polygons[z]) != 0) {
+                    return true;
+                }
+                Point2D v = g.polygons[z][0];
+                double ru = (v.x - cx) * ux + (v.y - cy) * uy, rv = (v.x - cx) * vx + (v.y - cy) * vy;
+                if (Math.abs(ru) <= halfU && Math.abs(rv) <= halfV) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // separating axis test between edge e and the rectangle, on the rectangle's two axes and the edge's normal.
+    private boolean edgeOverlaps(int e, double cx, double cy, double ux, double uy, double vx, double vy,
+                                 double halfU, double halfV) {
+        double ax = grid.ex0[e] - cx, ay = grid.ey0[e] - cy, bx = grid.ex1[e] - cx, by = grid.ey1[e] - cy;
+        double au = ax * ux + ay * uy, bu = bx * ux + by * uy;
+        if (Math.min(au, bu) > halfU || Math.max(au, bu) < -halfU) {
+            return false;
+        }
+        double av = ax * vx + ay * vy, bv = bx * vx + by * vy;
+        if (Math.min(av, bv) > halfV || Math.max(av, bv) < -halfV) {
+            return false;
+        }
+        double nx = -(by - ay), ny = bx - ax;
+        // the edge projects to one point on its normal; the rectangle to an interval about the origin
+        double d = ax * nx + ay * ny;
+        double r = halfU * Math.abs(ux * nx + uy * ny) + halfV * Math.abs(vx * nx + vy * ny);
+        return Math.abs(d) <= r;
+    }
+}
@@ -27,11 +27,15 @@ public final class GeometryUtils {
      * @return &gt;0 for p2 left of the line through p0 and p1, &lt;0 for p2 right of line, 0 for p2 on line
      */
     public static long isLeft(Point2D p0, Point2D p1, Point2D p2) {
-        return ((p1.x - p0.x) * (p2.y - p0.y)
-                - (p2.x - p0.x) * (p1.y - p0.y));
+        return isLeft(p0, p1, p2.x, p2.y);
 
     }
 
+    private static long isLeft(Point2D p0, Point2D p1, long x2, long y2) {
+        return ((p1.x - p0.x) * (y2 - p0.y)
+                - (x2 - p0.x) * (p1.y - p0.y));
+    }
+
     private static long perp(Point2D u, Point2D v) {
         return ((u).x * (v).y - (u).y * (v).x);
 
@@ -171,18 +175,30 @@ public final class GeometryUtils {
      */
 
     public static int checkWindingNumber(Point2D p, Point2D[] v) {
+        return checkWindingNumber(p.x, p.y, v);
+    }
+
+    /**
+     * Winding number test for a point and a polygon, without requiring a {@link Point2D} for the tested point.
+     *
+     * @param px The X coordinate of the point
+     * @param py The Y coordinate of the point
+     * @param v  The vertices of the poly
+     * @return Winding number (0 for outside)
+     */
+    public static int checkWindingNumber(long px, long py, Point2D[] v) {
 
         int wn = 0;    // the  winding number counter
 
         // loop through all edges of the polygon
         for (int i = 0; i < v.length; i++) {   // edge from v[i] to  v[i+1]
-            if (v[i].y <= p.y) {          // start y <= p.y
-                if (v[i + 1].y > p.y)      // an upward crossing
-                    if (isLeft(v[i], v[(i + 1) % v.length], p) > 0)  // p left of  edge
+            if (v[i].y <= py) {          // start y <= p.y
+                if (v[(i + 1) % v.length].y > py)      // an upward crossing
+                    if (isLeft(v[i], v[(i + 1) % v.length], px, py) > 0)  // p left of  edge
                         ++wn;            // have  a valid up intersect
             } else {                        // start y > p.y (no test needed)
-                if (v[i + 1].y <= p.y)     // a downward crossing
-                    if (isLeft(v[i], v[(i + 1) % v.length], p) < 0)  // p right of  edge
+                if (v[(i + 1) % v.length].y <= py)     // a downward crossing
+                    if (isLeft(v[i], v[(i + 1) % v.length], px, py) < 0)  // p right of  edge
                         --wn;            // have  a valid down intersect
             }
         }
@@ -0,0 +1,323 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import ftc.team6460.javadeck.api.planner.ObstacleException;
+
+import java.util.*;
+
+/**
+ * A two-level path planner for large fields, using {@link Field.Zone}s as clusters. Waypoints are grouped by the exact set
+ * of zones containing them. Waypoints with a connection into another cluster are entrances. On construction, the
+ * shortest path cost between every pair of entrances of the same cluster is computed. Queries then search this much
+ * smaller graph of entrances, and only expand the route into individual waypoints as it is iterated.
+ * <p>
+ * The planner is a snapshot: it must be rebuilt after waypoints, connections or zones of the field change. Queries do not
+ * modify the planner or the field, and may be run from several threads at once.
+ */
+public final class HierarchicalPlanner {
+    private final Map<Waypoint, Integer> clusterOf = new HashMap<>();
+    private final Map<Integer, List<Waypoint>> entrancesOf = new HashMap<>();
+    // entrance -> (entrance -> cost), covering both connections between clusters and paths within one.
+    private final Map<Waypoint, Map<Waypoint, Double>> abstractEdges = new HashMap<>();
+    private final int clusterCount;
+
+    /**
+     * Precomputes the entrance graph for the current state of a field.
+     */
+    public HierarchicalPlanner(Field field) {
+        Map<Object, Integer> ids = new HashMap<>();
+        for (Waypoint w : field.getWaypoints()) {
+            // the zone bitmask identifies the cluster, unless some of the waypoint's zones are beyond its reach
+            long mask = w.getZoneMask();
+            Object key = (Long.bitCount(mask) == w.getZones().size()) ? (Object) mask : new HashSet<>(w.getZones());
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = ids.size();
+                ids.put(key, id);
+            }
+            clusterOf.put(w, id);
+        }
+        clusterCount = ids.size();
+
+        for (Map.Entry<Waypoint, Integer> e : clusterOf.entrySet()) {
+            Waypoint w = e.getKey();
+            for (int i = 0; i < w.getDegree(); i++) {
+                Waypoint n = w.getNeighbor(i);
+                Integer nc = clusterOf.get(n);
+                if (nc != null && !nc.equals(e.getValue())) {
+                    edgesOf(w).put(n, w.getEdgeLength(i));
+                }
+            }
+        }
+        for (Waypoint w : abstractEdges.keySet()) {
+            Integer c = clusterOf.get(w);
+            List<Waypoint> entrances = entrancesOf.get(c);
+            if (entrances == null) {
+                entrances = new ArrayList<>();
+                entrancesOf.put(c, entrances);
+            }
+            entrances.add(w);
+        }
+
+        for (List<Waypoint> entrances : entrancesOf.values()) {
+            for (Waypoint from : entrances) {
+                ClusterSearch s = new ClusterSearch(from, null);
+                Map<Waypoint, Double> edges = edgesOf(from);
+                for (Waypoint to : entrances) {
+                    Double d = s.dist.get(to);
+                    if (to != from && d != null) {
+                        edges.put(to, d);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of clusters that the waypoints were divided into.
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Returns the number of waypoints in the entrance graph.
+     */
+    public int getEntranceCount() {
+        return abstractEdges.size();
+    }
+
+    /**
+     * Finds the shortest path (by Euclidean metric) between two waypoints. The route between clusters is found before this
+     * returns; the waypoints within each cluster are found as the returned path is iterated.
+     *
+     * @param start The waypoint at which to start.
+     * @param end   The waypoint at which to end.
+     * @return The path, from start to end, inclusive.
+     * @throws ObstacleException        If no path is found.
+     * @throws IllegalArgumentException If either waypoint was not on the field when this planner was built.
+     */
+    public LazyPath findPath(Waypoint start, Waypoint end) throws ObstacleException {
+        if (!clusterOf.containsKey(start) || !clusterOf.containsKey(end)) {
+            throw new IllegalArgumentException("Waypoint is not part of this planner's field");
+        }
+        if (start == end) {
+            return new LazyPath(Collections.singletonList(start), 0, null, null);
+        }
+        Integer endCluster = clusterOf.get(end);
+        ClusterSearch fromStart = new ClusterSearch(start, null);
+        ClusterSearch fromEnd = new ClusterSearch(end, null);
+
+        Map<Waypoint, Double> dist = new HashMap<>();
+        Map<Waypoint, Waypoint> prev = new HashMap<>();
+        PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+        dist.put(start, 0.0);
+        queue.add(new QueueEntry(start, 0));
+        while (!queue.isEmpty()) {
+            QueueEntry q = queue.poll();
+            Waypoint u = q.w;
+            if (q.dist > dist.get(u)) {
+                continue;
+            }
+            if (u == end) {
+                break;
+            }
+            Map<Waypoint, Double> edges = abstractEdges.get(u);
+            if (edges != null) {
+                for (Map.Entry<Waypoint, Double> e : edges.entrySet()) {
+                    relax(u, e.getKey(), q.dist + e.getValue(), dist, prev, queue);
+                }
+            }
+            if (u == start) {
+                List<Waypoint> entrances = entrancesOf.get(clusterOf.get(start));
+                if (entrances != null) {
+                    for (Waypoint e : entrances) {
+                        Double d = fromStart.dist.get(e);
+                        if (d != null) {
+                            relax(u, e, d, dist, prev, queue);
+                        }
+                    }
+                }
+            }
+            if (clusterOf.get(u).equals(endCluster)) {
+                Double d = fromEnd.dist.get(u);
+                if (d != null) {
+                    relax(u, end, q.dist + d, dist, prev, queue);
+                }
+            }
+        }
+
+        if (!prev.containsKey(end)) {
+            throw new ObstacleException("No path found.");
+        }
+        LinkedList<Waypoint> route = new LinkedList<>();
+        for (Waypoint w = end; w != null; w = prev.get(w)) {
+            route.addFirst(w);
+        }
+        return new LazyPath(route, dist.get(end), fromStart, fromEnd);
+    }
+
+    private static void relax(Waypoint u, Waypoint v, double alt, Map<Waypoint, Double> dist, Map<Waypoint, Waypoint> prev,
+                              PriorityQueue<QueueEntry> queue) {
+        Double old = dist.get(v);
+        if (old == null || alt < old) {
+            dist.put(v, alt);
+            prev.put(v, u);
+            queue.add(new QueueEntry(v, alt));
+        }
+    }
+
+    private Map<Waypoint, Double> edgesOf(Waypoint w) {
+        Map<Waypoint, Double> edges = abstractEdges.get(w);
+        if (edges == null) {
+            edges = new HashMap<>();
+            abstractEdges.put(w, edges);
+        }
+        return edges;
+    }
+
+    /**
+     * A path whose waypoints are filled in one cluster at a time, as it is iterated.
+     */
+    public final class LazyPath implements Iterator<Waypoint> {
+        private final List<Waypoint> route;
+        private final double length;
+        private final ClusterSearch fromStart;
+        private final ClusterSearch fromEnd;
+        private final ArrayDeque<Waypoint> pending = new ArrayDeque<>();
+        private int nextRouteIdx = 1;
+
+        private LazyPath(List<Waypoint> route, double length, ClusterSearch fromStart, ClusterSearch fromEnd) {
+            this.route = new ArrayList<>(route);
+            this.length = length;
+            this.fromStart = fromStart;
+            this.fromEnd = fromEnd;
+            pending.add(route.get(0));
+        }
+
+        /**
+         * Returns the total length of this path.
+         */
+        public double getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the entrances and endpoints that this path passes through, without the waypoints between them.
+         */
+        public List<Waypoint> getRoute() {
+            return Collections.unmodifiableList(route);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty() || nextRouteIdx < route.size();
+        }
+
+        @Override
+        public Waypoint next() {
+            if (pending.isEmpty()) {
+                if (nextRouteIdx >= route.size()) {
+                    throw new NoSuchElementException();
+                }
+                refine(route.get(nextRouteIdx - 1), route.get(nextRouteIdx));
+                nextRouteIdx++;
+            }
+            return pending.poll();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        // queues the waypoints after a, up to and including b.
+        private void refine(Waypoint a, Waypoint b) {
+            if (!clusterOf.get(a).equals(clusterOf.get(b))) {
+                // a direct connection between clusters
+                pending.add(b);
+                return;
+            }
+            Waypoint last = route.get(route.size() - 1);
+            if (b == last && fromEnd != null) {
+                // the search from the end already points towards it
+                for (Waypoint w = fromEnd.prev.get(a); w != null; w = fromEnd.prev.get(w)) {
+                    pending.add(w);
+                }
+                return;
+            }
+            ClusterSearch s = (a == route.get(0) && fromStart != null) ? fromStart : new ClusterSearch(a, b);
+            LinkedList<Waypoint> seg = new LinkedList<>();
+            for (Waypoint w = b; w != a; w = s.prev.get(w)) {
+                seg.addFirst(w);
+            }
+            pending.addAll(seg);
+        }
+    }
+
+    // Dijkstra's algorithm confined to the cluster of the source, optionally stopping once target is settled.
+    private final class ClusterSearch {
+        final Map<Waypoint, Double> dist = new HashMap<>();
+        final Map<Waypoint, Waypoint> prev = new HashMap<>();
+
+        ClusterSearch(Waypoint source, Waypoint target) {
+            Integer cluster = clusterOf.get(source);
+            PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+            dist.put(source, 0.0);
+            queue.add(new QueueEntry(source, 0));
+            while (!queue.isEmpty()) {
+                QueueEntry q = queue.poll();
+                if (q.dist > dist.get(q.w)) {
+                    continue;
+                }
+                if (q.w == target) {
+                    return;
+                }
+                for (int i = 0; i < q.w.getDegree(); i++) {
+                    Waypoint v = q.w.getNeighbor(i);
+                    if (cluster.equals(clusterOf.get(v))) {
+                        relax(q.w, v, q.dist + q.w.getEdgeLength(i), dist, prev, queue);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class QueueEntry implements Comparable<QueueEntry> {
+        final Waypoint w;
+        final double dist;
+
+        QueueEntry(Waypoint w, double dist) {
+            this.w = w;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(QueueEntry o) {
+            return Double.compare(dist, o.dist);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A polygon grown outwards by a fixed radius (the Minkowski sum of the polygon and a disc), along with the data needed to
+ * test against it quickly. Rounded corners are approximated by tangent polygons lying outside the true arc, so the
+ * result never under-estimates the inflated area.
+ * <p>
+ * Reflex corners are mitred. When the radius is large compared to the features of a concave polygon, the outline may
+ * self-intersect; the winding number test still treats such loops as inside.
+ */
+final class InflatedPolygon {
+    // maximum angle turned per straight piece when approximating a rounded corner
+    private static final double MAX_ARC_STEP = Math.PI / 8;
+
+    private final long radius;
+    private final Point2D[] vertices;
+    private final Segment[] edges;
+    private final long minX, minY, maxX, maxY;
+
+    InflatedPolygon(Point2D[] polygon, long radius) {
+        this.radius = radius;
+        this.vertices = (radius == 0) ? polygon.clone() : inflate(polygon, radius);
+        this.edges = new Segment[vertices.length];
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (int i = 0; i < vertices.length; i++) {
+            Point2D p = vertices[i];
+            edges[i] = new Segment(p, vertices[(i + 1) % vertices.length]);
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    long getRadius() {
+        return radius;
+    }
+
+    Point2D[] getVertices() {
+        return vertices;
+    }
+
+    boolean contains(Point2D p) {
+        if (p.x < minX || p.x > maxX || p.y < minY || p.y > maxY) {
+            return false;
+        }
+        return GeometryUtils.checkWindingNumber(p, vertices) != 0;
+    }
+
+    boolean intersects(Segment s) {
+        if (Math.max(s.p0.x, s.p1.x) < minX || Math.min(s.p0.x, s.p1.x) > maxX
+                || Math.max(s.p0.y, s.p1.y) < minY || Math.min(s.p0.y, s.p1.y) > maxY) {
+            return false;
+        }
+        for (Segment e : edges) {
+            if (GeometryUtils.intersect2D(s, e) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Point2D[] inflate(Point2D[] polygon, long radius) {
+        int n = polygon.length;
+        // work counterclockwise, so that outward normals are on the right of each edge
+        double area = 0;
+        for (int i = 0; i < n; i++) {
+            Point2D a = polygon[i];
+            Point2D b = polygon[(i + 1) % n];
+            area += (double) a.x * b.y - (double) b.x * a.y;
+        }
+        Point2D[] v = new Point2D[n];
+        for (int i = 0; i < n; i++) {
+            v[i] = (area >= 0) ? polygon[i] : polygon[n - 1 - i];
+        }
+
+        List<Point2D> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Point2D prev = v[(i + n - 1) % n];
+            Point2D cur = v[i];
+            Point2D next = v[(i + 1) % n];
+            double e1x = cur.x - prev.x, e1y = cur.y - prev.y;
+            double e2x = next.x - cur.x, e2y = next.y - cur.y;
+            double l1 = Math.hypot(e1x, e1y), l2 = Math.hypot(e2x, e2y);
+            // outward unit normals of the incoming and outgoing edges
+            double n1x = e1y / l1, n1y = -e1x / l1;
+            double n2x = e2y / l2, n2y = -e2x / l2;
+            double cross = e1x * e2y - e1y * e2x;
+            if (cross > 0) {
+                // convex corner: round it off
+                double a1 = Math.atan2(n1y, n1x);
+                double sweep = Math.IEEEremainder(Math.atan2(n2y, n2x) - a1, 2 * Math.PI);
+                int steps = (int) Math.ceil(Math.abs(sweep) / MAX_ARC_STEP);
+                double step = sweep / steps;
+                double outer = radius / Math.cos(step / 2);
+                out.add(offset(cur, n1x * radius, n1y * radius));
+                for (int j = 0; j < steps; j++) {
+                    double a = a1 + (j + 0.5) * step;
+                    out.add(offset(cur, Math.cos(a) * outer, Math.sin(a) * outer));
+                }
+                out.add(offset(cur, n2x * radius, n2y * radius));
+            } else if (cross < 0 && 1 + n1x * n2x + n1y * n2y > 1e-3) {
+                // reflex corner: meet the two offset edges
+                double k = radius / (1 + n1x * n2x + n1y * n2y);
+                out.add(offset(cur, (n1x + n2x) * k, (n1y + n2y) * k));
+            } else {
+                // straight, or folded back on itself
+                out.add(offset(cur, n1x * radius, n1y * radius));
+                if (cross != 0) {
+                    out.add(offset(cur, n2x * radius, n2y * radius));
+                }
+            }
+        }
+        return out.toArray(new Point2D[out.size()]);
+    }
+
+    private static Point2D offset(Point2D p, double dx, double dy) {
+        return new Point2D(p.x + Math.round(dx), p.y + Math.round(dy));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.*;
+
+/**
+ * Lazily enumerates loopless paths between two waypoints in order of increasing length, using Yen's algorithm. The
+ * shortest path is found on the first call to {@link KShortestPaths#hasNext()} or {@link KShortestPaths#next()}; each
+ * further path costs one round of spur searches, and is only computed when asked for. All searches share one set of
+ * working maps and one queue, which are cleared rather than reallocated.
+ * <p>
+ * The field must not be modified while paths are being enumerated.
+ */
+public final class KShortestPaths implements Iterator<List<Waypoint>> {
+    private final Waypoint start;
+    private final Waypoint end;
+
+    // paths returned so far, and candidates found but not yet returned
+    private final List<List<Waypoint>> found = new ArrayList<>();
+    private final PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+    private final Set<List<Waypoint>> candidateSet = new HashSet<>();
+
+    // shared search context
+    private final Map<Waypoint, Double> dist = new HashMap<>();
+    private final Map<Waypoint, Waypoint> prev = new HashMap<>();
+    private final PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+    private final Set<Waypoint> bannedNodes = new HashSet<>();
+    private final Map<Waypoint, Set<Waypoint>> bannedEdges = new HashMap<>();
+
+    private List<Waypoint> next;
+    private boolean exhausted;
+
+    KShortestPaths(Waypoint start, Waypoint end, boolean reachable) {
+        this.start = start;
+        this.end = end;
+        this.exhausted = !reachable;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !exhausted) {
+            next = computeNext();
+            exhausted = (next == null);
+        }
+        return next != null;
+    }
+
+    /**
+     * Returns the next shortest path, from start to end inclusive.
+     */
+    @Override
+    public List<Waypoint> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<Waypoint> rV = next;
+        next = null;
+        return rV;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the total length of a path.
+     */
+    public static double length(List<Waypoint> path) {
+        double len = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            len += path.get(i).distanceTo(path.get(i + 1));
+        }
+        return len;
+    }
+
+    private List<Waypoint> computeNext() {
+        if (found.isEmpty()) {
+            List<Waypoint> first = (start == end) ? Collections.singletonList(start) : search(start);
+            if (first != null) {
+                found.add(Collections.unmodifiableList(first));
+            }
+            return first == null ? null : found.get(0);
+        }
+        List<Waypoint> last = found.get(found.size() - 1);
+        for (int i = 0; i + 1 < last.size(); i++) {
+            Waypoint spur = last.get(i);
+            List<Waypoint> root = last.subList(0, i + 1);
+            bannedNodes.clear();
+            bannedEdges.clear();
+            // leave the spur by an edge no earlier path with this root has used
+            for (List<Waypoint> p : found) {
+                if (p.size() > i + 1 && p.subList(0, i + 1).equals(root)) {
+                    ban(p.get(i), p.get(i + 1));
+                }
+            }
+            // and never revisit the root, keeping the result loopless
+            bannedNodes.addAll(root.subList(0, i));
+            List<Waypoint> spurPath = search(spur);
+            if (spurPath != null) {
+                List<Waypoint> total = new ArrayList<>(root.subList(0, i));
+                total.addAll(spurPath);
+                if (candidateSet.add(total)) {
+                    candidates.add(new Candidate(total, length(total)));
+                }
+            }
+        }
+        Candidate best = candidates.poll();
+        if (best == null) {
+            return null;
+        }
+        candidateSet.remove(best.path);
+        List<Waypoint> rV = Collections.unmodifiableList(best.path);
+        found.add(rV);
+        return rV;
+    }
+
+    private void ban(Waypoint a, Waypoint b) {
+        Set<Waypoint> s = bannedEdges.get(a);
+        if (s == null) {
+            s = new HashSet<>();
+            bannedEdges.put(a, s);
+        }
+        s.add(b);
+    }
+
+    // Dijkstra's algorithm from source to end, avoiding banned nodes and edges.
+    private List<Waypoint> search(Waypoint source) {
+        dist.clear();
+        prev.clear();
+        queue.clear();
+        dist.put(source, 0.0);
+        queue.add(new QueueEntry(source, 0));
+        while (!queue.isEmpty()) {
+            QueueEntry q = queue.poll();
+            Waypoint u = q.w;
+            if (q.dist > dist.get(u)) {
+                continue;
+            }
+            if (u == end) {
+                LinkedList<Waypoint> path = new LinkedList<>();
+                for (Waypoint w = end; w != null; w = prev.get(w)) {
+                    path.addFirst(w);
+                }
+                return new ArrayList<>(path);
+            }
+            Set<Waypoint> banned = bannedEdges.get(u);
+            for (int i = 0; i < u.getDegree(); i++) {
+                Waypoint v = u.getNeighbor(i);
+                if (bannedNodes.contains(v) || (banned != null && banned.contains(v))) {
+                    continue;
+                }
+                double alt = q.dist + u.getEdgeLength(i);
+                Double old = dist.get(v);
+                if (old == null || alt < old) {
+                    dist.put(v, alt);
+                    prev.put(v, u);
+                    queue.add(new QueueEntry(v, alt));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        final List<Waypoint> path;
+        final double length;
+
+        Candidate(List<Waypoint> path, double length) {
+            this.path = path;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Double.compare(length, o.length);
+        }
+    }
+
+    private static final class QueueEntry implements Comparable<QueueEntry> {
+        final Waypoint w;
+        final double dist;
+
+        QueueEntry(Waypoint w, double dist) {
+            this.w = w;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(QueueEntry o) {
+            return Double.compare(dist, o.dist);
+        }
+    }
+}
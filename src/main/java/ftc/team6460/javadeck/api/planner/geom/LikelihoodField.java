@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.List;
+
+/**
+ * A likelihood field for range sensors. The distance from each grid cell to the nearest obstacle edge is precomputed, and
+ * turned into the likelihood of a beam ending there: a gaussian in that distance, mixed with a constant floor for
+ * spurious readings. Scoring a pose against a scan is then one table lookup per beam, with no ray casting, which makes it
+ * cheap enough to run for every cell a position integrator evaluates.
+ * <p>
+ * Instances are immutable once built, and may be shared freely between threads.
+ *
+ * @see Field#createLikelihoodField(long, double, double)
+ */
+public final class LikelihoodField {
+    private final ClearanceMap distances;
+    // log of the beam likelihood, per cell of the distance map
+    private final double[] logLikelihood;
+    private final double logRandom;
+
+    LikelihoodField(List<Point2D[]> obstacles, long minX, long minY, long maxX, long maxY, long cellSize,
+                    double sigma, double randomProbability) {
+        if (sigma <= 0 || randomProbability < 0 || randomProbability >= 1) {
+            throw new IllegalArgumentException("sigma must be positive, and random probability in [0, 1)");
+        }
+        distances = new ClearanceMap(obstacles, false, minX, minY, maxX, maxY, cellSize);
+        logLikelihood = new double[distances.cellCount()];
+        for (int i = 0; i < logLikelihood.length; i++) {
+            double d = distances.getCellClearance(i);
+            double g = Double.isInfinite(d) ? 0 : Math.exp(-d * d / (2 * sigma * sigma));
+            logLikelihood[i] = Math.log((1 - randomProbability) * g + randomProbability);
+        }
+        logRandom = Math.log(randomProbability);
+    }
+
+    /**
+     * Returns the distance from a point to the nearest obstacle edge, in mm, to within about one cell.
+     *
+     * @return The distance, or {@link Double#POSITIVE_INFINITY} if the point is too far from every obstacle to matter.
+     */
+    public double getDistance(double x, double y) {
+        int i = distances.cellIndex(x, y);
+        return i < 0 ? Double.POSITIVE_INFINITY : distances.getCellClearance(i);
+    }
+
+    /**
+     * Returns the likelihood of a range beam ending at a point.
+     */
+    public double getBeamLikelihood(double x, double y) {
+        int i = distances.cellIndex(x, y);
+        return Math.exp(i < 0 ? logRandom : logLikelihood[i]);
+    }
+
+    /**
+     * Scores a pose against a scan of range readings. Readings at or beyond <code>maxRange</code> (or NaN) are taken as
+     * misses, and skipped.
+     *
+     * @param x        The x coordinate of the sensor, in mm.
+     * @param y        The y coordinate of the sensor, in mm.
+     * @param heading  The absolute heading of the sensor, in radians counterclockwise from the x axis.
+     * @param angles   The direction of each beam relative to the heading, in radians, where positive values are right of
+     *                 the heading, as with {@link Field#castRays(double, double, double, double[], double, double[])}.
+     * @param ranges   The range read by each beam, in mm.
+     * @param maxRange The sensor's maximum range, in mm.
+     * @return The geometric mean of the likelihoods of the beams, which stays between 0 and 1 however many beams there
+     * are; 1 if no beam hit anything.
+     */
+    public double getScanLikelihood(double x, double y, double heading, double[] angles, double[] ranges, double maxRange) {
+        double logSum = 0;
+        int n = 0;
+        for (int i = 0; i < angles.length; i++) {
+            double r = ranges[i];
+            if (!(r < maxRange)) {
+                continue;
+            }
+            double theta = heading - angles[i];
+            int c = distances.cellIndex(x + r * Math.cos(theta), y + r * Math.sin(theta));
+            logSum += c < 0 ? logRandom : logLikelihood[c];
+            n++;
+        }
+        return n == 0 ? 1 : Math.exp(logSum / n);
+    }
+}
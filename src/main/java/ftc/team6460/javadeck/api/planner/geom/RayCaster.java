@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+/**
+ * Casts rays against the edges in an {@link EdgeGrid}, walking the grid cells along each ray in order (Amanatides and
+ * Woo's traversal) and stopping at the first cell that holds a hit no further than its far side. A ray therefore only
+ * tests the edges in the cells it passes through before its first hit. Stateless, so rays may be cast from several
+ * threads at once.
+ */
+final class RayCaster {
+    private final EdgeGrid grid;
+
+    RayCaster(EdgeGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Returns the distance along a ray to the first edge it meets, or {@link Double#POSITIVE_INFINITY} if there is none
+     * within <code>maxRange</code>.
+     *
+     * @param dx The x component of the ray's direction, which must be a unit vector.
+     * @param dy The y component of the ray's direction.
+     */
+    double cast(double ox, double oy, double dx, double dy, double maxRange) {
+        EdgeGrid g = grid;
+        if (g.edgeCount() == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cs = g.cellSize;
+        double minX = g.originX, maxX = g.originX + g.cols * cs;
+        double minY = g.originY, maxY = g.originY + g.rows * cs;
+
+        // clip the ray to the grid's box
+        double tEnter = 0, tExit = maxRange;
+        if (dx != 0) {
+            double t0 = (minX - ox) / dx, t1 = (maxX - ox) / dx;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        } else if (ox < minX || ox > maxX) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (dy != 0) {
+            double t0 = (minY - oy) / dy, t1 = (maxY - oy) / dy;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        } else if (oy < minY || oy > maxY) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (tEnter > tExit) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        int cx = g.col(ox + dx * tEnter), cy = g.row(oy + dy * tEnter);
+        int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1;
+        double tMaxX = dx == 0 ? Double.POSITIVE_INFINITY : (g.originX + (cx + (dx > 0 ? 1 : 0)) * cs - ox) / dx;
+        double tMaxY = dy == 0 ? Double.POSITIVE_INFINITY : (g.originY + (cy + (dy > 0 ? 1 : 0)) * cs - oy) / dy;
+        double tDeltaX = dx == 0 ? Double.POSITIVE_INFINITY : cs / Math.abs(dx);
+        double tDeltaY = dy == 0 ? Double.POSITIVE_INFINITY : cs / Math.abs(dy);
+
+        double best = Double.POSITIVE_INFINITY;
+        while (true) {
+            int c = cy * g.cols + cx;
+            for (int k = g.cellStart[c]; k < g.cellStart[c + 1]; k++) {
+                double t = hit(g.cellEdges[k], ox, oy, dx, dy);
+                if (t < best) {
+                    best = t;
+                }
+            }
+            double cellExit = Math.min(tMaxX, tMaxY);
+            if (best <= cellExit || cellExit > tExit) {
+                break;
+            }
+            if (tMaxX < tMaxY) {
+                cx += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                cy += stepY;
+                tMaxY += tDeltaY;
+            }
+            if (cx < 0 || cx >= g.cols || cy < 0 || cy >= g.rows) {
+                break;
+            }
+        }
+        return best <= maxRange ? best : Double.POSITIVE_INFINITY;
+    }
+
+    // distance along the ray to edge e, or infinity if it misses. Edges parallel to the ray are never hit.
+    private double hit(int e, double ox, double oy, double dx, double dy) {
+        double ax = grid.ex0[e], ay = grid.ey0[e];
+        double sx = grid.ex1[e] - ax, sy = grid.ey1[e] - ay;
+        double denom = dx * sy - dy * sx;
+        if (denom == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double qx = ax - ox, qy = ay - oy;
+        double t = (qx * sy - qy * sx) / denom;
+        double s = (qx * dy - qy * dx) / denom;
+        return (t >= 0 && s >= 0 && s <= 1) ? t : Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link SearchListener} that aggregates search statistics, including a histogram of search latency. Bucket
+ * <code>i</code> of the histogram counts searches that took from 2<sup>i</sup> up to 2<sup>i+1</sup> microseconds;
+ * bucket 0 also counts anything faster. This may be shared between fields and threads.
+ */
+public final class SearchMetrics implements SearchListener {
+    public static final int BUCKETS = 32;
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong nodesExpanded = new AtomicLong();
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong decreaseKeys = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    @Override
+    public void searchCompleted(SearchStats stats) {
+        searches.incrementAndGet();
+        if (!stats.isFound()) {
+            failures.incrementAndGet();
+        }
+        nodesExpanded.addAndGet(stats.getNodesExpanded());
+        pushes.addAndGet(stats.getPushes());
+        decreaseKeys.addAndGet(stats.getDecreaseKeys());
+        long latency = stats.getLatencyNanos();
+        latencyNanos.addAndGet(latency);
+        long max;
+        while (latency > (max = maxLatencyNanos.get()) && !maxLatencyNanos.compareAndSet(max, latency)) {
+            // retry
+        }
+        histogram.incrementAndGet(bucket(latency));
+    }
+
+    static int bucket(long latencyNanos) {
+        long micros = latencyNanos / 1000;
+        return micros <= 1 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public long getSearches() {
+        return searches.get();
+    }
+
+    /**
+     * Returns the number of searches that found no path.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded.get();
+    }
+
+    public long getPushes() {
+        return pushes.get();
+    }
+
+    public long getDecreaseKeys() {
+        return decreaseKeys.get();
+    }
+
+    public long getTotalLatencyNanos() {
+        return latencyNanos.get();
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * Returns a copy of the latency histogram, with {@link SearchMetrics#BUCKETS} entries.
+     */
+    public long[] getLatencyHistogram() {
+        long[] rV = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            rV[i] = histogram.get(i);
+        }
+        return rV;
+    }
+
+    /**
+     * Clears all counts. Searches completing during the reset may be partly counted.
+     */
+    public void reset() {
+        searches.set(0);
+        failures.set(0);
+        nodesExpanded.set(0);
+        pushes.set(0);
+        decreaseKeys.set(0);
+        latencyNanos.set(0);
+        maxLatencyNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long n = searches.get();
+        return "SearchMetrics{" +
+                "searches=" + n +
+                ", failures=" + failures.get() +
+                ", meanNodesExpanded=" + (n == 0 ? 0 : nodesExpanded.get() / (double) n) +
+                ", meanLatencyMicros=" + (n == 0 ? 0 : latencyNanos.get() / 1000.0 / n) +
+                ", maxLatencyMicros=" + maxLatencyNanos.get() / 1000.0 +
+                '}';
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+/**
+ * Statistics about one shortest-path search.
+ */
+public final class SearchStats {
+    private final boolean found;
+    private final int nodesExpanded;
+    private final int pushes;
+    private final int decreaseKeys;
+    private final int pathLength;
+    private final double pathCost;
+    private final long latencyNanos;
+
+    SearchStats(boolean found, int nodesExpanded, int pushes, int decreaseKeys, int pathLength, double pathCost,
+                long latencyNanos) {
+        this.found = found;
+        this.nodesExpanded = nodesExpanded;
+        this.pushes = pushes;
+        this.decreaseKeys = decreaseKeys;
+        this.pathLength = pathLength;
+        this.pathCost = pathCost;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * Returns whether a path was found.
+     */
+    public boolean isFound() {
+        return found;
+    }
+
+    /**
+     * Returns the number of waypoints taken off the queue and relaxed.
+     */
+    public int getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * Returns the number of times a waypoint was added to the queue, including re-adds after a decrease-key.
+     */
+    public int getPushes() {
+        return pushes;
+    }
+
+    /**
+     * Returns the number of times a waypoint already in the queue had its distance lowered. Each costs a linear scan of
+     * the queue.
+     */
+    public int getDecreaseKeys() {
+        return decreaseKeys;
+    }
+
+    /**
+     * Returns the number of waypoints in the path found, or 0 if none was.
+     */
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * Returns the length of the path found, in mm, or {@link Double#POSITIVE_INFINITY} if none was.
+     */
+    public double getPathCost() {
+        return pathCost;
+    }
+
+    /**
+     * Returns the wall-clock time the search took, in nanoseconds.
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStats{" +
+                "found=" + found +
+                ", nodesExpanded=" + nodesExpanded +
+                ", pushes=" + pushes +
+                ", decreaseKeys=" + decreaseKeys +
+                ", pathLength=" + pathLength +
+                ", pathCost=" + pathCost +
+                ", latencyNanos=" + latencyNanos +
+                '}';
+    }
+}
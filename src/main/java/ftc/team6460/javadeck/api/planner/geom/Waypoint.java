@@ -30,22 +30,32 @@ import java.util.*;
  * Created by hexafraction on 4/11/15.
  */
 public final class Waypoint {
-    private final Set<Field.Zone> zones = new HashSet<>();
+    private static final Waypoint[] NO_NEIGHBORS = new Waypoint[0];
+    private static final double[] NO_LENGTHS = new double[0];
+    private static final Field.Zone[] NO_ZONES = new Field.Zone[0];
 
-    private Waypoint(Point2D pos) {
+    // Adjacency is kept in parallel arrays, rather than a set, as degrees are small and searches iterate it constantly.
+    private Waypoint[] neighbors = NO_NEIGHBORS;
+    private double[] edgeLengths = NO_LENGTHS;
+    private int degree = 0;
+
+    private Field.Zone[] zones = NO_ZONES;
+    // bit i is set if this waypoint is in the zone with index i on its field; only covers the first 64 zones.
+    private long zoneMask = 0;
+
+    Waypoint(Point2D pos) {
         this.pos = pos;
     }
 
-    private static final AbstractMap<Point2D, Waypoint> cache = new HashMap<>();
-
+    /**
+     * Creates a new waypoint. Waypoints are no longer shared between fields; use {@link Field#getWaypoint(Point2D)} to
+     * look up the waypoint that a field already has at a position.
+     *
+     * @deprecated Use {@link Field#getWaypoint(Point2D)}.
+     */
+    @Deprecated
     public static Waypoint fromPos(Point2D pos) {
-        if (cache.containsKey(pos)) {
-            return cache.get(pos);
-        } else {
-            Waypoint wp = new Waypoint(pos);
-            cache.put(pos, wp);
-            return wp;
-        }
+        return new Waypoint(pos);
     }
 
     @Override
@@ -68,7 +78,16 @@ public final class Waypoint {
     public Tag tag;
 
     public void disconnect(Waypoint w) {
-        this.neighbors.remove(w);
+        for (int i = 0; i < degree; i++) {
+            if (neighbors[i].equals(w)) {
+                // order does not matter, so fill the hole with the last entry
+                degree--;
+                neighbors[i] = neighbors[degree];
+                edgeLengths[i] = edgeLengths[degree];
+                neighbors[degree] = null;
+                return;
+            }
+        }
     }
 
     public static class Tag {
@@ -76,6 +95,12 @@ public final class Waypoint {
         Waypoint prev;
         boolean inQueue = false;
 
+        void reset() {
+            dist = Double.POSITIVE_INFINITY;
+            prev = null;
+            inQueue = false;
+        }
+
         @Override
         public String toString() {
             return "Tag{" +
@@ -86,17 +111,59 @@ public final class Waypoint {
         }
     }
 
+    /**
+     * Returns a read-only copy of the neighbors of this waypoint. Searches should prefer {@link Waypoint#getDegree()} and
+     * {@link Waypoint#getNeighbor(int)}, which do not allocate.
+     */
     public Set<Waypoint> getNeighbors() {
-        return Collections.unmodifiableSet(neighbors);
+        return new ArrayView<>(Arrays.copyOf(neighbors, degree), degree);
     }
 
+    public int getDegree() {
+        return degree;
+    }
+
+    /**
+     * @param i An index from 0 (inclusive) to {@link Waypoint#getDegree()} (exclusive). Indices change when neighbors are removed.
+     */
+    public Waypoint getNeighbor(int i) {
+        return neighbors[i];
+    }
+
+    /**
+     * Returns the distance to the neighbor at the same index, as per {@link Waypoint#distanceTo(Waypoint)}.
+     */
+    public double getEdgeLength(int i) {
+        return edgeLengths[i];
+    }
+
+    /**
+     * Returns a read-only copy of the zones containing this waypoint.
+     */
     public Set<Field.Zone> getZones() {
-        return Collections.unmodifiableSet(zones);
+        // zones is replaced, never modified, so it can be shared
+        return new ArrayView<>(zones, zones.length);
+    }
+
+    /**
+     * Returns the zones containing this waypoint, as a bitmask of their indices on the field. Only zones with index under 64 are included.
+     */
+    long getZoneMask() {
+        return zoneMask;
     }
 
-    void addZone(Field.Zone z) throws IllegalArgumentException {
+    void addZone(Field.Zone z, int index) throws IllegalArgumentException {
         if (z.contains(pos)) {
-            zones.add(z);
+            for (Field.Zone mine : zones) {
+                if (mine == z) {
+                    return;
+                }
+            }
+            zones = Arrays.copyOf(zones, zones.length + 1);
+            zones[zones.length - 1] = z;
+            if (index < 64) {
+                zoneMask |= 1L << index;
+            }
         } else {
             throw new IllegalArgumentException("Waypoint not in zone");
         }
@@ -104,7 +171,6 @@ public final class Waypoint {
 
 
     private final Point2D pos;
-    private final Set<Waypoint> neighbors = new HashSet<>();
 
     public double distanceTo(Waypoint w) {
         return GeometryUtils.euclideanDistance(w.pos, this.pos);
@@ -113,14 +179,26 @@ public final class Waypoint {
     @Override
     public String toString() {
         return "Waypoint{" +
-                "zones=" + zones +
+                "zones=" + getZones() +
                 ", tag=" + tag +
                 ", pos=" + pos +
                 '}';
     }
 
     void addNeighbor(Waypoint w) {
-        this.neighbors.add(w);
+        for (int i = 0; i < degree; i++) {
+            if (neighbors[i].equals(w)) {
+                return;
+            }
+        }
+        if (degree == neighbors.length) {
+            int capacity = Math.max(4, degree * 2);
+            neighbors = Arrays.copyOf(neighbors, capacity);
+            edgeLengths = Arrays.copyOf(edgeLengths, capacity);
+        }
+        neighbors[degree] = w;
+        edgeLengths[degree] = distanceTo(w);
+        degree++;
     }
 
     public Point2D getPos() {
@@ -128,4 +206,54 @@ public final class Waypoint {
     }
 
 
+    // read-only set over the first size elements of an array with no duplicates, which must not change afterwards.
+    private static final class ArrayView<E> extends AbstractSet<E> {
+        private final E[] elements;
+        private final int size;
+
+        ArrayView(E[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public E next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return elements[next++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            for (int i = 0; i < size; i++) {
+                if (elements[i].equals(o)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
 }
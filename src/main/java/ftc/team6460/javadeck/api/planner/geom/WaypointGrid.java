@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.*;
+
+/**
+ * A spatial index over the waypoints of one field. Space is cut into square cells, and each occupied cell keeps a
+ * bucket of the waypoints inside it, so that nearest, k-nearest and radius queries only look at the cells around the
+ * query point rather than at every waypoint.
+ * <p>
+ * All methods are synchronized.
+ */
+final class WaypointGrid {
+    private final long cellSize;
+    private final Map<Long, List<Waypoint>> cells = new HashMap<>();
+    private int size = 0;
+    // bounds of the cells that have ever been occupied, so that k-nearest searches know when to stop
+    private long minCX = Long.MAX_VALUE, minCY = Long.MAX_VALUE, maxCX = Long.MIN_VALUE, maxCY = Long.MIN_VALUE;
+
+    WaypointGrid(long cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    synchronized void add(Waypoint w) {
+        long cx = cell(w.getPos().x), cy = cell(w.getPos().y);
+        Long key = key(cx, cy);
+        List<Waypoint> bucket = cells.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>(4);
+            cells.put(key, bucket);
+        }
+        bucket.add(w);
+        size++;
+        minCX = Math.min(minCX, cx);
+        minCY = Math.min(minCY, cy);
+        maxCX = Math.max(maxCX, cx);
+        maxCY = Math.max(maxCY, cy);
+    }
+
+    synchronized void remove(Waypoint w) {
+        Long key = key(cell(w.getPos().x), cell(w.getPos().y));
+        List<Waypoint> bucket = cells.get(key);
+        if (bucket != null && bucket.remove(w)) {
+            size--;
+            if (bucket.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the waypoints no further than <code>radius</code> from a point, nearest first.
+     */
+    synchronized List<Waypoint> withinRadius(Point2D pos, double radius) {
+        List<Neighbor> found = new ArrayList<>();
+        if (radius >= 0 && size > 0) {
+            long r = (long) Math.ceil(radius);
+            long x0 = Math.max(cell(pos.x - r), minCX), x1 = Math.min(cell(pos.x + r), maxCX);
+            long y0 = Math.max(cell(pos.y - r), minCY), y1 = Math.min(cell(pos.y + r), maxCY);
+            for (long cx = x0; cx <= x1; cx++) {
+                for (long cy = y0; cy <= y1; cy++) {
+                    List<Waypoint> bucket = cells.get(key(cx, cy));
+                    if (bucket != null) {
+                        for (Waypoint w : bucket) {
+                            double d = GeometryUtils.euclideanDistance(pos, w.getPos());
+                            if (d <= radius) {
+                                found.add(new Neighbor(w, d));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(found);
+        return unwrap(found);
+    }
+
+    /**
+     * Returns the <code>k</code> waypoints nearest to a point, nearest first. Fewer are returned if the field holds fewer.
+     * Cells are visited in square rings of growing size around the query, stopping once no unvisited cell can hold
+     * anything nearer than the k-th best so far.
+     */
+    synchronized List<Waypoint> nearest(Point2D pos, int k) {
+        if (k <= 0 || size == 0) {
+            return Collections.emptyList();
+        }
+        // max-heap on distance, holding the best k so far
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(Math.min(k, size), Collections.reverseOrder());
+        long qx = cell(pos.x), qy = cell(pos.y);
+        long maxRing = Math.max(Math.max(qx - minCX, maxCX - qx), Math.max(qy - minCY, maxCY - qy));
+        for (long ring = 0; ring <= maxRing; ring++) {
+            if (best.size() == k && best.peek().distance <= (ring - 1) * (double) cellSize) {
+                break;
+            }
+            for (long cx = qx - ring; cx <= qx + ring; cx++) {
+                // the first and last columns are walked in full; others only at the top and bottom of the ring
+                long step = (cx == qx - ring || cx == qx + ring) ? 1 : Math.max(2 * ring, 1);
+                for (long cy = qy - ring; cy <= qy + ring; cy += step) {
+                    List<Waypoint> bucket = cells.get(key(cx, cy));
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (Waypoint w : bucket) {
+                        double d = GeometryUtils.euclideanDistance(pos, w.getPos());
+                        if (best.size() < k) {
+                            best.add(new Neighbor(w, d));
+                        } else if (d < best.peek().distance) {
+                            best.poll();
+                            best.add(new Neighbor(w, d));
+                        }
+                    }
+                }
+            }
+        }
+        List<Neighbor> found = new ArrayList<>(best);
+        Collections.sort(found);
+        return unwrap(found);
+    }
+
+    private long cell(long coord) {
+        // round towards negative infinity, so that cells do not double up around zero
+        long c = coord / cellSize;
+        return (coord < 0 && c * cellSize != coord) ? c - 1 : c;
+    }
+
+    private static Long key(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+    }
+
+    private static List<Waypoint> unwrap(List<Neighbor> found) {
+        List<Waypoint> rV = new ArrayList<>(found.size());
+        for (Neighbor n : found) {
+            rV.add(n.w);
+        }
+        return rV;
+    }
+
+    private static final class Neighbor implements Comparable<Neighbor> {
+        final Waypoint w;
+        final double distance;
+
+        Neighbor(Waypoint w, double distance) {
+            this.w = w;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Neighbor o) {
+            return Double.compare(distance, o.distance);
+        }
+    }
+}
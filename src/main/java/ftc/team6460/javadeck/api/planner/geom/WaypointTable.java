@@ -0,0 +1,187 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ftc.team6460.javadeck.api.planner.geom;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The waypoints of one field, keyed by position. Coordinates are packed into a single <code>long</code>, and stored in an
+ * open-addressing table with linear probing, so lookups do not allocate or chase entry objects. Removal shifts later
+ * entries back rather than leaving tombstones, so the table never fills with dead slots.
+ * <p>
+ * Lookups and updates are synchronized. Iteration is not, and must not overlap with updates.
+ */
+final class WaypointTable implements Iterable<Waypoint> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Waypoint[] values = new Waypoint[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Packs a position into a single key.
+     *
+     * @throws IllegalArgumentException If a coordinate does not fit in 32 bits (about 2000km).
+     */
+    static long pack(Point2D p) {
+        if (p.x != (int) p.x || p.y != (int) p.y) {
+            throw new IllegalArgumentException("Coordinates out of range: " + p);
+        }
+        return (p.x << 32) | (p.y & 0xFFFFFFFFL);
+    }
+
+    synchronized Waypoint get(Point2D pos) {
+        long key = pack(pos);
+        int mask = values.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a waypoint, unless one is already present at its position.
+     *
+     * @return The waypoint already present, or null if the given one was added.
+     */
+    synchronized Waypoint putIfAbsent(Waypoint w) {
+        long key = pack(w.getPos());
+        int mask = values.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        keys[i] = key;
+        values[i] = w;
+        // keep at most half full, so probe runs stay short
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the waypoint at a position.
+     *
+     * @return The waypoint removed, or null if there was none.
+     */
+    synchronized Waypoint remove(Point2D pos) {
+        long key = pack(pos);
+        int mask = values.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        Waypoint removed = values[i];
+        if (removed == null) {
+            return null;
+        }
+        // shift back any later entries of the run that would no longer be reachable past the gap
+        int gap = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Waypoint> iterator() {
+        final Waypoint[] table = values;
+        return new Iterator<Waypoint>() {
+            private int next = advance(0);
+
+            private int advance(int i) {
+                while (i < table.length && table[i] == null) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < table.length;
+            }
+
+            @Override
+            public Waypoint next() {
+                if (next >= table.length) {
+                    throw new NoSuchElementException();
+                }
+                Waypoint w = table[next];
+                next = advance(next + 1);
+                return w;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Waypoint[] oldValues = values;
+        keys = new long[capacity];
+        values = new Waypoint[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        // murmur3 finalizer, as packed coordinates are far from uniformly distributed
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import ftc.team6460.javadeck.api.planner.ObstacleException;
+import ftc.team6460.javadeck.api.planner.geom.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the clearance map and clearance-aware connections.
+ */
+public class ClearanceMapTest {
+    private static Field.Zone box(Field.ZoneMode mode, long x0, long y0, long x1, long y1) throws DegeneratePolygonException {
+        return new Field.Zone(mode, new Point2D[]{new Point2D(x0, y0), new Point2D(x1, y0), new Point2D(x1, y1), new Point2D(x0, y1)});
+    }
+
+    @Test
+    public void testDistances() throws Exception {
+        Field f = new Field(box(Field.ZoneMode.ZONE_OBSTACLE, 1000, 1000, 1200, 1200),
+                box(Field.ZoneMode.ZONE_OBSTACLE, 2500, 2500, 2600, 2600));
+        ClearanceMap map = f.getClearanceMap();
+        Assert.assertEquals(0, map.getClearance(new Point2D(1100, 1100)), map.getCellSize());
+        Assert.assertEquals(300, map.getClearance(new Point2D(1500, 1100)), map.getCellSize());
+        Assert.assertEquals(Math.hypot(300, 400), map.getClearance(new Point2D(1500, 1600)), map.getCellSize());
+        // outside the rasterised area, clearance is under-estimated, never over-estimated
+        Assert.assertTrue(map.getClearance(new Point2D(100000, 1100)) <= 100000 - 1200);
+        Assert.assertSame(map, f.getClearanceMap());
+    }
+
+    @Test
+    public void testNarrowGap() throws Exception {
+        Field f = new Field(box(Field.ZoneMode.ZONE_OBSTACLE, 0, 0, 1000, 1000),
+                box(Field.ZoneMode.ZONE_ILLEGAL, 0, 1200, 1000, 2000));
+        Waypoint a = f.getWaypoint(new Point2D(-500, 1100));
+        Waypoint b = f.getWaypoint(new Point2D(1500, 1100));
+        f.addWaypoint(a);
+        f.addWaypoint(b);
+        // a point robot fits through the 200mm gap
+        f.addConnection(a, b);
+        f.removeWaypoint(a);
+        f.removeWaypoint(b);
+
+        f.setMinimumClearance(150);
+        f.addWaypoint(a);
+        f.addWaypoint(b);
+        try {
+            f.addConnection(a, b);
+            Assert.fail("Connection through a gap narrower than the robot was accepted");
+        } catch (ObstacleException expected) {
+        }
+        try {
+            f.addWaypoint(f.getWaypoint(new Point2D(1100, 500)));
+            Assert.fail("Waypoint closer than the clearance was accepted");
+        } catch (ObstacleException expected) {
+        }
+    }
+
+    @Test
+    public void testLikelihoodField() throws Exception {
+        // a walled 3m square arena, with a pillar in it
+        Field f = new Field(box(Field.ZoneMode.ZONE_OBSTACLE, 0, 0, 3000, 3000),
+                box(Field.ZoneMode.ZONE_OBSTACLE, 1000, 1800, 1300, 2100));
+        LikelihoodField lf = f.createLikelihoodField(10, 30, 0.05);
+        Assert.assertEquals(500, lf.getDistance(500, 1500), 10);
+        Assert.assertEquals(0, lf.getDistance(0, 1500), 10);
+        // only edges count, so the inside of the pillar is not at distance 0
+        Assert.assertEquals(150, lf.getDistance(1150, 1950), 10);
+        Assert.assertEquals(Double.POSITIVE_INFINITY, lf.getDistance(-5000, 0), 0);
+        Assert.assertTrue(lf.getBeamLikelihood(0, 1500) > 0.9);
+        Assert.assertEquals(0.05, lf.getBeamLikelihood(500, 1500), 1e-6);
+
+        double[] angles = new double[36];
+        double[] ranges = new double[36];
+        for (int i = 0; i < angles.length; i++) {
+            angles[i] = 2 * Math.PI * i / angles.length;
+        }
+        f.castRays(700, 1200, 0.3, angles, 4000, ranges);
+        double truth = lf.getScanLikelihood(700, 1200, 0.3, angles, ranges, 4000);
+        Assert.assertTrue(truth > 0.9);
+        Assert.assertTrue(lf.getScanLikelihood(800, 1200, 0.3, angles, ranges, 4000) < truth);
+        Assert.assertTrue(lf.getScanLikelihood(700, 1300, 0.3, angles, ranges, 4000) < truth);
+        Assert.assertTrue(lf.getScanLikelihood(700, 1200, 0.5, angles, ranges, 4000) < truth);
+    }
+}
@@ -22,14 +22,15 @@
  * THE SOFTWARE.
  */
 
-import ftc.team6460.javadeck.api.planner.ObstacleException;
-import ftc.team6460.javadeck.api.planner.geom.DuplicateWaypointException;
-import ftc.team6460.javadeck.api.planner.geom.Field;
-import ftc.team6460.javadeck.api.planner.geom.Point2D;
-import ftc.team6460.javadeck.api.planner.geom.Waypoint;
+import ftc.team6460.javadeck.api.planner.*;
+import ftc.team6460.javadeck.api.planner.geom.*;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 /**
  * Created by hexafraction on 4/11/15.
@@ -43,7 +44,7 @@ public class DijkstraTest {
 
         for (int x = 0; x < 20; x++) {
             for (int y = 0; y < 20; y++) {
-                test[x][y] = Waypoint.fromPos(new Point2D(x, y));
+                test[x][y] = f.getWaypoint(new Point2D(x, y));
                 if ((x > 3 && x < 18 && (y == 6 || y==13)) || (y < 18 && x == 8)) {
                     test[x][y] = null;
                 }
@@ -94,4 +95,327 @@ public class DijkstraTest {
             System.out.println();
         }
     }
+
+    @Test
+    public void testSmoothing() throws Exception {
+        Waypoint[][] grid = new Waypoint[20][20];
+        Field f = buildWalledLattice(grid);
+        // unobstructed: a straight shot
+        Assert.assertEquals(2, f.smoothPath(f.findPath(grid[0][15], grid[19][19])).size());
+
+        List<Waypoint> raw = f.findPath(grid[0][0], grid[19][0]);
+        List<Waypoint> smooth = f.smoothPath(raw);
+        Assert.assertTrue(smooth.size() > 2);
+        Assert.assertTrue(smooth.size() < raw.size());
+        Assert.assertEquals(raw.get(0), smooth.get(0));
+        Assert.assertEquals(raw.get(raw.size() - 1), smooth.get(smooth.size() - 1));
+        for (int i = 0; i + 1 < smooth.size(); i++) {
+            Assert.assertTrue(f.hasLineOfSight(smooth.get(i).getPos(), smooth.get(i + 1).getPos()));
+        }
+    }
+
+    @Test
+    public void testMovePlan() throws Exception {
+        Field f = buildWalledLattice(new Waypoint[20][20]);
+        ImmutableRobotPosition start = new ImmutableRobotPosition(5.01, 0.02, 1);
+        ImmutableRobotPosition end = new ImmutableRobotPosition(6.9, 0.1, 0);
+        MovePlan plan = f.findPath(start, end, new MovePlan(1));
+        List<RelativePosition> moves = f.findPath(start, end);
+        Assert.assertEquals(moves.size(), plan.size());
+        RobotPosition pos = start;
+        for (RelativePosition rp : plan) {
+            pos = rp.apply(pos);
+        }
+        Assert.assertEquals(end.getX(), pos.getX(), 1e-9);
+        Assert.assertEquals(end.getY(), pos.getY(), 1e-9);
+        Assert.assertEquals(plan.getEndX(), pos.getX(), 1e-9);
+        Assert.assertEquals(plan.getEndY(), pos.getY(), 1e-9);
+        Assert.assertEquals(moves.get(0).getTheta(), plan.getTheta(0), 0);
+
+        // a drive runs the plan from its primitives, ending where the plan does
+        PrimitiveDrive drive = new PrimitiveDrive(start);
+        drive.move(plan, false);
+        Assert.assertEquals(plan.size(), drive.moves);
+        Assert.assertEquals(plan.getEndX(), drive.getCurrentPosition().getX(), 1e-9);
+        Assert.assertEquals(plan.getEndY(), drive.getCurrentPosition().getY(), 1e-9);
+        Assert.assertEquals(plan.getEndTheta(), drive.getCurrentPosition().getTheta(), 1e-9);
+    }
+
+    // only takes moves as primitives
+    private static class PrimitiveDrive extends RobotDrive {
+        int moves;
+
+        PrimitiveDrive(RobotPosition start) {
+            super(start);
+        }
+
+        @Override
+        protected void move0(RelativePosition travel, boolean suppressObstacles) {
+            throw new AssertionError("move wrapped in an object");
+        }
+
+        @Override
+        protected void move0(double distance, double theta, boolean suppressObstacles) {
+            moves++;
+        }
+
+        @Override
+        protected double calculateDrift(RelativePosition travel) {
+            throw new AssertionError("move wrapped in an object");
+        }
+
+        @Override
+        protected double calculateAngularDrift(RelativePosition travel) {
+            throw new AssertionError("move wrapped in an object");
+        }
+
+        @Override
+        protected double calculateDrift(double distance, double theta) {
+            return 0;
+        }
+
+        @Override
+        protected double calculateAngularDrift(double distance, double theta) {
+            return 0;
+        }
+
+        @Override
+        public double calculateTime(RelativePosition travel) {
+            return 0;
+        }
+    }
+
+    @Test
+    public void testHierarchical() throws Exception {
+        // four quadrant zones, and a wall with a single gap between the left quadrants
+        Field f = new Field(
+                quadrant(-10000, 0), quadrant(-9000, 0), quadrant(-10000, 1000), quadrant(-9000, 1000),
+                new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, new Point2D[]{
+                        new Point2D(-10050, 990), new Point2D(-9250, 990), new Point2D(-9250, 1010), new Point2D(-10050, 1010)}));
+        Waypoint[][] grid = new Waypoint[20][20];
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                Point2D p = new Point2D(x * 100 - 10000 + 25, y * 100 + 25);
+                grid[x][y] = f.getWaypoint(p);
+                f.addWaypoint(grid[x][y]);
+            }
+        }
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                for (int dx = 0; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        if ((dx != 0 || dy > 0) && x + dx < 20 && y + dy >= 0 && y + dy < 20) {
+                            try {
+                                f.addConnection(grid[x][y], grid[x + dx][y + dy]);
+                            } catch (ObstacleException ignored) {
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        HierarchicalPlanner h = new HierarchicalPlanner(f);
+        Assert.assertEquals(4, h.getClusterCount());
+        Random r = new Random(6460);
+        for (int i = 0; i < 50; i++) {
+            Waypoint a = grid[r.nextInt(20)][r.nextInt(20)];
+            Waypoint b = grid[r.nextInt(20)][r.nextInt(20)];
+            List<Waypoint> expected = f.findPath(a, b);
+            HierarchicalPlanner.LazyPath actual = h.findPath(a, b);
+            double len = 0;
+            Waypoint last = null;
+            while (actual.hasNext()) {
+                Waypoint w = actual.next();
+                if (last == null) {
+                    Assert.assertEquals(a, w);
+                } else {
+                    Assert.assertTrue(last.getNeighbors().contains(w));
+                    len += last.distanceTo(w);
+                }
+                last = w;
+            }
+            Assert.assertEquals(b, last);
+            Assert.assertEquals(length(expected), len, 1e-6);
+            Assert.assertEquals(len, actual.getLength(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testReachability() throws Exception {
+        Field f = new Field();
+        Waypoint[] chain = new Waypoint[7];
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = f.getWaypoint(new Point2D(i * 100, -20000));
+            f.addWaypoint(chain[i]);
+        }
+        for (int i = 0; i + 1 < chain.length; i++) {
+            if (i != 3) {
+                f.addConnection(chain[i], chain[i + 1]);
+            }
+        }
+        Assert.assertTrue(f.isReachable(chain[0], chain[3]));
+        Assert.assertFalse(f.isReachable(chain[0], chain[4]));
+        try {
+            f.findPath(chain[0], chain[6]);
+            Assert.fail("path found between disconnected waypoints");
+        } catch (ObstacleException expected) {
+        }
+        f.addConnection(chain[3], chain[4]);
+        Assert.assertTrue(f.isReachable(chain[0], chain[6]));
+        // removing an end does not split anything; removing the middle does
+        f.removeWaypoint(chain[6]);
+        Assert.assertTrue(f.isReachable(chain[0], chain[5]));
+        f.removeWaypoint(chain[3]);
+        Assert.assertFalse(f.isReachable(chain[0], chain[5]));
+        Assert.assertTrue(f.isReachable(chain[4], chain[5]));
+        Assert.assertFalse(f.isReachable(chain[0], chain[6]));
+    }
+
+    @Test
+    public void testReachabilityLeafChurn() throws Exception {
+        Field f = new Field();
+        Waypoint a = f.getWaypoint(new Point2D(0, -30000));
+        Waypoint b = f.getWaypoint(new Point2D(100, -30000));
+        f.addWaypoint(a);
+        f.addWaypoint(b);
+        f.addConnection(a, b);
+        // leaves come and go many times over; dead slots are reclaimed along the way
+        for (int i = 0; i < 1000; i++) {
+            Waypoint leaf = f.getWaypoint(new Point2D(200 + i % 7, -30000));
+            f.addWaypoint(leaf);
+            f.addConnection(b, leaf);
+            Assert.assertTrue(f.isReachable(a, leaf));
+            f.removeWaypoint(leaf);
+        }
+        Assert.assertTrue(f.isReachable(a, b));
+    }
+
+    @Test
+    public void testKShortestPaths() throws Exception {
+        Waypoint[][] grid = new Waypoint[20][20];
+        Field f = buildWalledLattice(grid);
+        Waypoint start = grid[0][0];
+        Waypoint end = grid[19][0];
+        KShortestPaths paths = f.findPaths(start, end);
+        Set<List<Waypoint>> seen = new HashSet<>();
+        double last = length(f.findPath(start, end));
+        for (int k = 0; k < 10; k++) {
+            Assert.assertTrue(paths.hasNext());
+            List<Waypoint> p = paths.next();
+            Assert.assertEquals(start, p.get(0));
+            Assert.assertEquals(end, p.get(p.size() - 1));
+            Assert.assertEquals(p.size(), new HashSet<>(p).size());
+            for (int i = 0; i + 1 < p.size(); i++) {
+                Assert.assertTrue(p.get(i).getNeighbors().contains(p.get(i + 1)));
+            }
+            Assert.assertTrue(seen.add(p));
+            Assert.assertTrue(length(p) >= last - 1e-9);
+            last = length(p);
+        }
+
+        // a ring has exactly two loopless paths between opposite corners
+        Field ring = new Field();
+        Waypoint[] r = new Waypoint[4];
+        for (int i = 0; i < 4; i++) {
+            r[i] = ring.getWaypoint(new Point2D((i == 1 || i == 2) ? 100 : 0, (i >= 2) ? 100 : 0));
+            ring.addWaypoint(r[i]);
+        }
+        for (int i = 0; i < 4; i++) {
+            ring.addConnection(r[i], r[(i + 1) % 4]);
+        }
+        KShortestPaths ringPaths = ring.findPaths(r[0], r[2]);
+        Assert.assertEquals(3, ringPaths.next().size());
+        Assert.assertEquals(3, ringPaths.next().size());
+        Assert.assertFalse(ringPaths.hasNext());
+
+        Waypoint lone = ring.getWaypoint(new Point2D(500, 500));
+        ring.addWaypoint(lone);
+        Assert.assertFalse(ring.findPaths(r[0], lone).hasNext());
+    }
+
+    @Test
+    public void testSearchMetrics() throws Exception {
+        Waypoint[][] grid = new Waypoint[20][20];
+        Field f = buildWalledLattice(grid);
+        SearchMetrics metrics = new SearchMetrics();
+        final SearchStats[] last = new SearchStats[1];
+        f.setSearchListener(stats -> {
+            metrics.searchCompleted(stats);
+            last[0] = stats;
+        });
+
+        List<Waypoint> path = f.findPath(grid[0][0], grid[19][0]);
+        Assert.assertTrue(last[0].isFound());
+        Assert.assertEquals(path.size(), last[0].getPathLength());
+        Assert.assertEquals(length(path), last[0].getPathCost(), 1e-6);
+        Assert.assertTrue(last[0].getNodesExpanded() > path.size());
+        Assert.assertTrue(last[0].getPushes() >= last[0].getNodesExpanded());
+
+        Waypoint lone = f.getWaypoint(new Point2D(-5000, -5000));
+        f.addWaypoint(lone);
+        try {
+            f.findPath(grid[0][0], lone);
+            Assert.fail("path found to an unconnected waypoint");
+        } catch (ObstacleException expected) {
+        }
+        Assert.assertFalse(last[0].isFound());
+        Assert.assertEquals(0, last[0].getPathLength());
+
+        Assert.assertEquals(2, metrics.getSearches());
+        Assert.assertEquals(1, metrics.getFailures());
+        long histogramTotal = 0;
+        for (long c : metrics.getLatencyHistogram()) {
+            histogramTotal += c;
+        }
+        Assert.assertEquals(2, histogramTotal);
+
+        f.setSearchListener(null);
+        f.findPath(grid[0][0], grid[19][0]);
+        Assert.assertEquals(2, metrics.getSearches());
+    }
+
+    private static Field.Zone quadrant(long x, long y) throws DegeneratePolygonException {
+        return new Field.Zone(Field.ZoneMode.ZONE_COMMON, new Point2D[]{
+                new Point2D(x, y), new Point2D(x + 1000, y), new Point2D(x + 1000, y + 1000), new Point2D(x, y + 1000)});
+    }
+
+    private static double length(List<Waypoint> path) {
+        double len = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            len += path.get(i).distanceTo(path.get(i + 1));
+        }
+        return len;
+    }
+
+    private static Field buildWalledLattice(Waypoint[][] grid) throws Exception {
+        // 100mm lattice, with an obstacle wall part of the way across
+        Field.Zone wall = new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, new Point2D[]{
+                new Point2D(5950, -50), new Point2D(6050, -50), new Point2D(6050, 1350), new Point2D(5950, 1350)});
+        Field f = new Field(wall);
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                Point2D p = new Point2D(x * 100 + 5000, y * 100);
+                if (!wall.contains(p)) {
+                    grid[x][y] = f.getWaypoint(p);
+                    f.addWaypoint(grid[x][y]);
+                }
+            }
+        }
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                for (int dx = 0; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        if ((dx != 0 || dy > 0) && x + dx < 20 && y + dy >= 0 && y + dy < 20
+                                && grid[x][y] != null && grid[x + dx][y + dy] != null) {
+                            try {
+                                f.addConnection(grid[x][y], grid[x + dx][y + dy]);
+                            } catch (ObstacleException ignored) {
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return f;
+    }
 }
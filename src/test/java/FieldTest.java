@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import ftc.team6460.javadeck.api.planner.ObstacleException;
+import ftc.team6460.javadeck.api.planner.geom.DuplicateWaypointException;
+import ftc.team6460.javadeck.api.planner.geom.Field;
+import ftc.team6460.javadeck.api.planner.geom.GeometryUtils;
+import ftc.team6460.javadeck.api.planner.geom.Point2D;
+import ftc.team6460.javadeck.api.planner.geom.Waypoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Tests for waypoint bookkeeping and queries on a field.
+ */
+public class FieldTest {
+    @Test
+    public void testWaypointLookup() throws Exception {
+        Field f = new Field();
+        for (int i = 0; i < 5000; i++) {
+            f.addWaypoint(f.getWaypoint(new Point2D(i % 100 - 50, i / 100 * 7 - 3000)));
+        }
+        for (int i = 0; i < 5000; i += 3) {
+            f.removeWaypoint(f.getWaypoint(new Point2D(i % 100 - 50, i / 100 * 7 - 3000)));
+        }
+        Set<Waypoint> seen = new HashSet<>();
+        for (Waypoint w : f.getWaypoints()) {
+            Assert.assertTrue(seen.add(w));
+            Assert.assertSame(w, f.getWaypoint(w.getPos()));
+        }
+        Assert.assertEquals(5000 - 1667, seen.size());
+        Assert.assertEquals(seen.size(), f.getWaypointCount());
+        for (int i = 0; i < 5000; i++) {
+            Point2D p = new Point2D(i % 100 - 50, i / 100 * 7 - 3000);
+            Assert.assertEquals(i % 3 != 0, seen.contains(f.getWaypoint(p)));
+        }
+    }
+
+    @Test
+    public void testRejectedWaypointsNotIndexed() throws Exception {
+        Field f = new Field(new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, new Point2D[]{
+                new Point2D(0, 0), new Point2D(100, 0), new Point2D(100, 100), new Point2D(0, 100)}));
+        Waypoint outside = f.getWaypoint(new Point2D(1000, 1000));
+        f.addWaypoint(outside);
+        try {
+            f.addWaypoint(f.getWaypoint(new Point2D(50, 50)));
+            Assert.fail("waypoint inside an obstacle was added");
+        } catch (ObstacleException expected) {
+        }
+        f.setMinimumClearance(300);
+        try {
+            f.addWaypoint(f.getWaypoint(new Point2D(250, 50)));
+            Assert.fail("waypoint too close to an obstacle was added");
+        } catch (ObstacleException expected) {
+        }
+        Assert.assertEquals(1, f.getWaypointCount());
+        Assert.assertSame(outside, f.getNearest(new Point2D(50, 50)));
+        Assert.assertEquals(1, f.getKNearest(new Point2D(50, 50), 5).size());
+        Assert.assertEquals(0, f.getWithinRadius(new Point2D(50, 50), 500).size());
+    }
+
+    @Test
+    public void testConnectBeforeAdd() throws Exception {
+        Field f = new Field();
+        Waypoint a = f.getWaypoint(new Point2D(0, 0));
+        Waypoint b = f.getWaypoint(new Point2D(1000, 0));
+        f.addConnection(a, b);
+        f.addWaypoint(a);
+        f.addWaypoint(b);
+        Assert.assertTrue(f.isReachable(a, b));
+        Assert.assertEquals(Arrays.asList(a, b), f.findPath(a, b));
+    }
+
+    @Test
+    public void testNearestQueries() throws Exception {
+        Field f = new Field();
+        Random r = new Random(6460);
+        List<Waypoint> all = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Waypoint w = f.getWaypoint(new Point2D(r.nextInt(8000) - 4000, r.nextInt(8000) - 4000));
+            try {
+                f.addWaypoint(w);
+                all.add(w);
+            } catch (DuplicateWaypointException ignored) {
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            final Point2D q = new Point2D(r.nextInt(12000) - 6000, r.nextInt(12000) - 6000);
+            List<Waypoint> sorted = new ArrayList<>(all);
+            Collections.sort(sorted, (a, b) -> Double.compare(GeometryUtils.euclideanDistance(q, a.getPos()),
+                    GeometryUtils.euclideanDistance(q, b.getPos())));
+
+            Assert.assertEquals(dist(q, sorted.get(0)), dist(q, f.getNearest(q)), 1e-9);
+            List<Waypoint> k = f.getKNearest(q, 7);
+            Assert.assertEquals(7, k.size());
+            for (int j = 0; j < 7; j++) {
+                Assert.assertEquals(dist(q, sorted.get(j)), dist(q, k.get(j)), 1e-9);
+            }
+
+            double radius = r.nextInt(1500);
+            List<Waypoint> within = f.getWithinRadius(q, radius);
+            int expected = 0;
+            while (expected < sorted.size() && dist(q, sorted.get(expected)) <= radius) {
+                expected++;
+            }
+            Assert.assertEquals(expected, within.size());
+            for (int j = 0; j < expected; j++) {
+                Assert.assertEquals(dist(q, sorted.get(j)), dist(q, within.get(j)), 1e-9);
+            }
+        }
+        Assert.assertEquals(all.size(), f.getKNearest(new Point2D(0, 0), all.size() + 10).size());
+        for (Waypoint w : all) {
+            f.removeWaypoint(w);
+        }
+        Assert.assertNull(f.getNearest(new Point2D(0, 0)));
+    }
+
+    @Test
+    public void testRaycast() throws Exception {
+        Random r = new Random(6460);
+        List<Point2D[]> boxes = new ArrayList<>();
+        Field f = new Field();
+        for (int i = 0; i < 40; i++) {
+            long x = r.nextInt(3000), y = r.nextInt(3000), w = 20 + r.nextInt(300), h = 20 + r.nextInt(300);
+            Point2D[] box = {new Point2D(x, y), new Point2D(x + w, y), new Point2D(x + w, y + h), new Point2D(x, y + h)};
+            boxes.add(box);
+            f.addZone(new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, box));
+        }
+        // not physical, so never hit
+        f.addZone(new Field.Zone(Field.ZoneMode.ZONE_ILLEGAL, new Point2D[]{
+                new Point2D(-100, -100), new Point2D(3500, -100), new Point2D(3500, 3500), new Point2D(-100, 3500)}));
+
+        double[] angles = new double[64];
+        double[] out = new double[64];
+        for (int i = 0; i < angles.length; i++) {
+            angles[i] = 2 * Math.PI * i / angles.length;
+        }
+        for (int i = 0; i < 50; i++) {
+            double x = r.nextDouble() * 5000 - 1000, y = r.nextDouble() * 5000 - 1000, heading = r.nextDouble() * 6;
+            f.castRays(x, y, heading, angles, 2500, out);
+            for (int j = 0; j < angles.length; j++) {
+                double theta = heading - angles[j];
+                double expected = Double.POSITIVE_INFINITY;
+                for (Point2D[] box : boxes) {
+                    for (int k = 0; k < 4; k++) {
+                        expected = Math.min(expected, rayHit(x, y, theta, box[k], box[(k + 1) % 4]));
+                    }
+                }
+                if (expected > 2500) {
+                    expected = Double.POSITIVE_INFINITY;
+                }
+                Assert.assertEquals(expected, out[j], 1e-6);
+                Assert.assertEquals(out[j], f.castRay(x, y, theta, 2500), 0);
+            }
+        }
+        Assert.assertEquals(Double.POSITIVE_INFINITY, new Field().castRay(0, 0, 0, 1000), 0);
+    }
+
+    private static double rayHit(double x, double y, double theta, Point2D a, Point2D b) {
+        double dx = Math.cos(theta), dy = Math.sin(theta);
+        double sx = b.getX() - a.getX(), sy = b.getY() - a.getY();
+        double denom = dx * sy - dy * sx;
+        if (denom == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = ((a.getX() - x) * sy - (a.getY() - y) * sx) / denom;
+        double u = ((a.getX() - x) * dy - (a.getY() - y) * dx) / denom;
+        return (t >= 0 && u >= 0 && u <= 1) ? t : Double.POSITIVE_INFINITY;
+    }
+
+    private static double dist(Point2D q, Waypoint w) {
+        return GeometryUtils.euclideanDistance(q, w.getPos());
+    }
+
+    @Test
+    public void testFieldsDoNotShareWaypoints() throws Exception {
+        Field f1 = new Field();
+        Field f2 = new Field();
+        Waypoint a1 = f1.getWaypoint(new Point2D(0, 0));
+        Waypoint b1 = f1.getWaypoint(new Point2D(0, 100));
+        f1.addWaypoint(a1);
+        f1.addWaypoint(b1);
+        f1.addConnection(a1, b1);
+        Waypoint a2 = f2.getWaypoint(new Point2D(0, 0));
+        Assert.assertNotSame(a1, a2);
+        Assert.assertTrue(a2.getNeighbors().isEmpty());
+        Assert.assertSame(a1, f1.getWaypoint(new Point2D(0, 0)));
+    }
+
+    @Test
+    public void testAdjacency() throws Exception {
+        Field f = new Field();
+        Waypoint hub = f.getWaypoint(new Point2D(0, 0));
+        f.addWaypoint(hub);
+        Waypoint[] spokes = new Waypoint[10];
+        for (int i = 0; i < spokes.length; i++) {
+            spokes[i] = f.getWaypoint(new Point2D(30 * (i + 1), 40 * (i + 1)));
+            f.addWaypoint(spokes[i]);
+            f.addConnection(hub, spokes[i]);
+            f.addConnection(spokes[i], hub);
+        }
+        Assert.assertEquals(spokes.length, hub.getDegree());
+        f.removeWaypoint(spokes[3]);
+        f.removeWaypoint(spokes[0]);
+        Assert.assertEquals(spokes.length - 2, hub.getDegree());
+        Assert.assertFalse(hub.getNeighbors().contains(spokes[3]));
+        for (int i = 0; i < hub.getDegree(); i++) {
+            Waypoint n = hub.getNeighbor(i);
+            Assert.assertEquals(hub.distanceTo(n), hub.getEdgeLength(i), 0);
+            Assert.assertTrue(n.getNeighbors().contains(hub));
+        }
+    }
+}
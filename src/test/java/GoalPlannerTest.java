@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import ftc.team6460.javadeck.api.planner.*;
+import ftc.team6460.javadeck.api.planner.geom.Field;
+import ftc.team6460.javadeck.api.planner.geom.Point2D;
+import ftc.team6460.javadeck.api.planner.geom.Waypoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GoalPlannerTest {
+
+    // a 3x3 lattice, 1m apart, with an obstacle over its centre
+    private static Field buildRing() throws Exception {
+        Field f = new Field(new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, new Point2D[]{
+                new Point2D(700, 700), new Point2D(1300, 700), new Point2D(1300, 1300), new Point2D(700, 1300)}));
+        Waypoint[][] grid = new Waypoint[3][3];
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                if (x != 1 || y != 1) {
+                    grid[x][y] = f.getWaypoint(new Point2D(x * 1000, y * 1000));
+                    f.addWaypoint(grid[x][y]);
+                }
+            }
+        }
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                if (grid[x][y] != null && x + 1 < 3 && grid[x + 1][y] != null) {
+                    f.addConnection(grid[x][y], grid[x + 1][y]);
+                }
+                if (grid[x][y] != null && y + 1 < 3 && grid[x][y + 1] != null) {
+                    f.addConnection(grid[x][y], grid[x][y + 1]);
+                }
+            }
+        }
+        return f;
+    }
+
+    // drives to (2m, 2m) and returns the drive once the goal has acted
+    private static RecordingDrive drive(Field f, RecordingDrive drive) {
+        GoalPlanner<Object> planner = new GoalPlanner<>(new Object(), drive, drive, f, 0.5);
+        boolean[] acted = new boolean[1];
+        planner.addGoal(new Goal<Object>(new ImmutableRobotPosition(2, 2, 0)) {
+            @Override
+            public double computeBenefit(Object state, GoalPlanner<Object> g) {
+                return 1;
+            }
+
+            @Override
+            public void act(RobotPosition pos, Object state, GoalPlanner<Object> g) {
+                acted[0] = true;
+                g.removeGoal(this);
+                g.stop();
+            }
+
+            @Override
+            public int compareTo(Goal<Object> o) {
+                return 0;
+            }
+        });
+        planner.runLoop();
+        Assert.assertTrue(acted[0]);
+        return drive;
+    }
+
+    @Test(timeout = 5000)
+    public void testDistancesInMeters() throws Exception {
+        Field f = buildRing();
+        f.setPathSmoothing(false);
+        RecordingDrive d = drive(f, new RecordingDrive(null));
+        double total = 0;
+        for (double dist : d.distances) {
+            Assert.assertTrue("move of " + dist + "m", dist <= 1 + 1e-9);
+            total += dist;
+        }
+        Assert.assertEquals(4, total, 1e-9);
+        Assert.assertEquals(2, d.getCurrentPosition().getX(), 1e-9);
+        Assert.assertEquals(2, d.getCurrentPosition().getY(), 1e-9);
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockedOnFirstLeg() throws Exception {
+        Field f = buildRing();
+        // smoothing makes the first leg run straight from the start to (2m, 1m); something unmapped sits on it
+        RecordingDrive d = drive(f, new RecordingDrive(new double[]{1.5, 0.75}));
+        Assert.assertEquals(1, d.blocked);
+        Assert.assertEquals(2, d.getCurrentPosition().getX(), 1e-9);
+        Assert.assertEquals(2, d.getCurrentPosition().getY(), 1e-9);
+        double total = 0;
+        for (double dist : d.distances) {
+            total += dist;
+        }
+        Assert.assertTrue(total < 4 + 1e-9);
+    }
+
+    // records each move's distance, and refuses moves that pass within 0.1m of an unmapped obstacle
+    private static class RecordingDrive extends RobotDrive {
+        final List<Double> distances = new ArrayList<>();
+        int blocked;
+        private final double[] obstacle;
+
+        RecordingDrive(double[] obstacle) {
+            super(new ImmutableRobotPosition(0, 0, 0));
+            this.obstacle = obstacle;
+        }
+
+        @Override
+        protected void move0(RelativePosition travel, boolean suppressObstacles) throws ObstacleException {
+            RobotPosition end = travel.apply(currentPosition);
+            if (obstacle != null) {
+                double x0 = currentPosition.getX(), y0 = currentPosition.getY();
+                double dx = end.getX() - x0, dy = end.getY() - y0;
+                double t = Math.max(0, Math.min(1, ((obstacle[0] - x0) * dx + (obstacle[1] - y0) * dy) / (dx * dx + dy * dy)));
+                if (Math.hypot(x0 + t * dx - obstacle[0], y0 + t * dy - obstacle[1]) < 0.1) {
+                    blocked++;
+                    throw new ObstacleException();
+                }
+            }
+            distances.add(travel.getDistance());
+        }
+
+        @Override
+        protected double calculateDrift(RelativePosition travel) {
+            return 0;
+        }
+
+        @Override
+        protected double calculateAngularDrift(RelativePosition travel) {
+            return 0;
+        }
+
+        @Override
+        public double calculateTime(RelativePosition travel) {
+            return 0;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by hexafraction on 3/31/15.
@@ -72,6 +73,261 @@ public class PositionIntegratorTest {
         }
     }
 
+    @Test(timeout = 20000)
+    public void testParallelMatchesSequential() throws Exception {
+        List<Sensor> sens = new ArrayList<>();
+        FakeXHill xH = new FakeXHill(Math.PI);
+        FakeYHill yH = new FakeYHill(Math.E);
+        sens.add(xH);
+        sens.add(yH);
+        WeightedAveragePositionIntegrator sequential = new WeightedAveragePositionIntegrator(sens, 10, 10);
+        WeightedAveragePositionIntegrator parallel = new WeightedAveragePositionIntegrator(sens, 10, 10);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallel.setForkJoinPool(pool);
+        try {
+            Random r = new Random(6460);
+            for (int i = 0; i < 5; i++) {
+                xH.setPos(r.nextDouble() * 8 + 1);
+                yH.setPos(r.nextDouble() * 8 + 1);
+                for (double minCorr : new double[]{0.5, 0.95}) {
+                    List<LocationCandidate> expected = sequential.getCandidates(minCorr);
+                    List<LocationCandidate> actual = parallel.getCandidates(minCorr);
+                    Assert.assertFalse(expected.isEmpty());
+                    Assert.assertEquals(expected.size(), actual.size());
+                    for (int j = 0; j < expected.size(); j++) {
+                        Assert.assertEquals(expected.get(j).getPosition().getX(), actual.get(j).getPosition().getX(), 0);
+                        Assert.assertEquals(expected.get(j).getPosition().getY(), actual.get(j).getPosition().getY(), 0);
+                        Assert.assertEquals(expected.get(j).getCorrelationStrength(), actual.get(j).getCorrelationStrength(), 0);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testBatchSensor() throws Exception {
+        FakeYHill yH = new FakeYHill(Math.E);
+        List<Sensor> plain = new ArrayList<>();
+        plain.add(new FakeXHill(Math.PI));
+        plain.add(yH);
+        BatchXHill batch = new BatchXHill(Math.PI);
+        List<Sensor> batched = new ArrayList<>();
+        batched.add(batch);
+        batched.add(yH);
+        List<LocationCandidate> expected = new WeightedAveragePositionIntegrator(plain, 10, 10).getCandidates(0.95);
+        List<LocationCandidate> actual = new WeightedAveragePositionIntegrator(batched, 10, 10).getCandidates(0.95);
+        Assert.assertTrue(batch.batches > 0);
+        Assert.assertEquals(0, batch.singles);
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int j = 0; j < expected.size(); j++) {
+            Assert.assertEquals(expected.get(j).getPosition().getX(), actual.get(j).getPosition().getX(), 0);
+            Assert.assertEquals(expected.get(j).getCorrelationStrength(), actual.get(j).getCorrelationStrength(), 0);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testSingleTileField() throws Exception {
+        FakeBeacon beacon = new FakeBeacon(new ImmutableRobotPosition(0.12, 0.12, 0));
+        List<LocationCandidate> res = new WeightedAveragePositionIntegrator(Collections.singletonList(beacon), 0.25, 0.25)
+                .getCandidates(0.9);
+        Assert.assertEquals(1, res.size());
+        Assert.assertEquals(0.12, res.get(0).getPosition().getX(), 0.02);
+        Assert.assertEquals(0.12, res.get(0).getPosition().getY(), 0.02);
+    }
+
+    @Test(timeout = 5000)
+    public void testUnfilledCandidateAtTileCentre() throws Exception {
+        // tile centres lie at 0.2 * i + 0.2 / 9 * 4
+        final double x = 2 + 0.8 / 9, y = 1 + 0.8 / 9;
+        // seen only at the one tile centre, so that no neighbour competes with it
+        FakeBeacon spike = new FakeBeacon(new ImmutableRobotPosition(x, y, 0)) {
+            @Override
+            public double getLikelihood(double px, double py) {
+                return Math.abs(px - x) < 0.01 && Math.abs(py - y) < 0.01 ? 1 : 0;
+            }
+
+            @Override
+            public Iterable<RobotPosition> getPossibleHotspots() {
+                return Collections.emptyList();
+            }
+        };
+        // the spike only just reaches islandMinAbsolute: enough to count as a maximum, but not to be filled in
+        List<LocationCandidate> res = new WeightedAveragePositionIntegrator(Collections.<Sensor>singletonList(spike), 10, 10,
+                7, 1e6, 1, 0.75).getCandidates(0.9);
+        Assert.assertEquals(1, res.size());
+        Assert.assertEquals(x, res.get(0).getPosition().getX(), 1e-9);
+        Assert.assertEquals(y, res.get(0).getPosition().getY(), 1e-9);
+    }
+
+    @Test(timeout = 5000)
+    public void testTracking() throws Exception {
+        BatchXHill xH = new BatchXHill(Math.PI);
+        FakeYHill yH = new FakeYHill(Math.E);
+        List<Sensor> sens = new ArrayList<>();
+        sens.add(xH);
+        sens.add(yH);
+        WeightedAveragePositionIntegrator integ = new WeightedAveragePositionIntegrator(sens, 10, 10);
+        integ.setTracking(null, 0.5, 0.95);
+        List<LocationCandidate> res = integ.getCandidates(0.9);
+        int global = xH.batches;
+        Assert.assertFalse(res.isEmpty());
+
+        // small moves stay inside the window
+        double x = Math.PI, y = Math.E;
+        for (int i = 0; i < 5; i++) {
+            x += 0.1;
+            y -= 0.05;
+            xH.setPos(x);
+            yH.setPos(y);
+            xH.batches = 0;
+            res = integ.getCandidates(0.9);
+            Assert.assertTrue(xH.batches < global / 4);
+            Collections.sort(res, LocationCandidate::compareDescending);
+            Assert.assertEquals(x, res.get(0).getPosition().getX(), 0.05);
+            Assert.assertEquals(y, res.get(0).getPosition().getY(), 0.05);
+        }
+
+        // a jump out of the window falls back to a full search
+        xH.setPos(8);
+        yH.setPos(7);
+        res = integ.getCandidates(0.9);
+        Collections.sort(res, LocationCandidate::compareDescending);
+        Assert.assertEquals(8, res.get(0).getPosition().getX(), 0.05);
+        Assert.assertEquals(7, res.get(0).getPosition().getY(), 0.05);
+    }
+
+    @Test(timeout = 5000)
+    public void testTrackingPastWindowEdge() throws Exception {
+        // a tile centre. Its neighbours are candidates too, so the windows span four tiles (0.8) to the right of it, and
+        // their fine cells 0.089 further.
+        double x = 4 + 0.8 / 9, y = 3 + 0.8 / 9;
+        FakeBeacon beacon = new FakeBeacon(new ImmutableRobotPosition(x, y, 0));
+        WeightedAveragePositionIntegrator integ = new WeightedAveragePositionIntegrator(Collections.<Sensor>singletonList(beacon), 10, 10);
+        integ.setTracking(null, 0.5, 0.5);
+        Assert.assertFalse(integ.getCandidates(0.3).isEmpty());
+
+        // just past the windows' edge, where the edge tile still sees a likelihood above minConfidence, but less than
+        // its neighbour outside the windows
+        beacon.setPos(new ImmutableRobotPosition(x + 1.1, y, 0));
+        List<LocationCandidate> res = integ.getCandidates(0.3);
+        Collections.sort(res, LocationCandidate::compareDescending);
+        Assert.assertEquals(x + 1.1, res.get(0).getPosition().getX(), 0.05);
+        Assert.assertEquals(y, res.get(0).getPosition().getY(), 0.05);
+    }
+
+    @Test(timeout = 5000)
+    public void testRefinement() throws Exception {
+        List<Sensor> sens = new ArrayList<>();
+        sens.add(new FakeXHill(Math.PI));
+        sens.add(new FakeYHill(Math.E));
+        WeightedAveragePositionIntegrator integ = new WeightedAveragePositionIntegrator(sens, 10, 10);
+        List<LocationCandidate> coarse = integ.getCandidates(0.95);
+        Collections.sort(coarse, LocationCandidate::compareDescending);
+        integ.setRefinement(8, 1e-5);
+        List<LocationCandidate> res = integ.getCandidates(0.95);
+        Collections.sort(res, LocationCandidate::compareDescending);
+        ImmutableRobotPosition p = res.get(0).getPosition();
+        Assert.assertEquals(Math.PI, p.getX(), 0.001);
+        Assert.assertEquals(Math.E, p.getY(), 0.001);
+        Assert.assertTrue(res.get(0).getCorrelationStrength() >= coarse.get(0).getCorrelationStrength());
+        Assert.assertTrue(Math.hypot(p.getX() - Math.PI, p.getY() - Math.E)
+                < Math.hypot(coarse.get(0).getPosition().getX() - Math.PI, coarse.get(0).getPosition().getY() - Math.E));
+    }
+
+    @Test(timeout = 5000)
+    public void testHeading() throws Exception {
+        FakeBeacon beacon = new FakeBeacon(new ImmutableRobotPosition(Math.PI, Math.E, 1));
+        WeightedAveragePositionIntegrator integ = new WeightedAveragePositionIntegrator(Collections.singletonList(beacon), 10, 10);
+        List<LocationCandidate> res = integ.getCandidates(0.9);
+        Collections.sort(res, LocationCandidate::compareDescending);
+        Assert.assertEquals(Math.PI, res.get(0).getPosition().getX(), 0.02);
+        Assert.assertEquals(Math.E, res.get(0).getPosition().getY(), 0.02);
+        Assert.assertEquals(1, res.get(0).getPosition().getTheta(), 0.001);
+
+        beacon.setPos(new ImmutableRobotPosition(6, 4, -3));
+        res = integ.getCandidates(0.9);
+        Collections.sort(res, LocationCandidate::compareDescending);
+        Assert.assertEquals(-3, res.get(0).getPosition().getTheta(), 0.001);
+
+        // sensors without heading information leave it at 0
+        List<Sensor> sens = new ArrayList<>();
+        sens.add(new FakeXHill(Math.PI));
+        sens.add(new FakeYHill(Math.E));
+        res = new WeightedAveragePositionIntegrator(sens, 10, 10).getCandidates(0.95);
+        Assert.assertEquals(0, res.get(0).getPosition().getTheta(), 0);
+    }
+
+    @Test(timeout = 5000)
+    public void testMonteCarlo() throws Exception {
+        FakeBeacon beacon = new FakeBeacon(new ImmutableRobotPosition(Math.PI, Math.E, 0));
+        MonteCarloPositionIntegrator integ = new MonteCarloPositionIntegrator(Collections.singletonList(beacon), 10, 10,
+                2000, 0.25, new Random(6460));
+        List<LocationCandidate> res = null;
+        for (int i = 0; i < 20; i++) {
+            res = integ.getCandidates(0.5);
+        }
+        Collections.sort(res, LocationCandidate::compareDescending);
+        Assert.assertEquals(Math.PI, res.get(0).getPosition().getX(), 0.1);
+        Assert.assertEquals(Math.E, res.get(0).getPosition().getY(), 0.1);
+        Assert.assertEquals(0, res.get(0).getPosition().getTheta(), 0.1);
+
+        // follow the drive's odometry as the robot moves
+        FakeDrive drive = new FakeDrive(new ImmutableRobotPosition(Math.PI, Math.E, 0));
+        integ.setDrive(drive, 0.1, 0.1);
+        for (int i = 0; i < 8; i++) {
+            drive.move(new RelativePosition(0.5, -0.2), false);
+            RobotPosition p = drive.getCurrentPosition();
+            beacon.setPos(p);
+            res = integ.getCandidates(0.5);
+            Collections.sort(res, LocationCandidate::compareDescending);
+            Assert.assertEquals(p.getX(), res.get(0).getPosition().getX(), 0.1);
+            Assert.assertEquals(p.getY(), res.get(0).getPosition().getY(), 0.1);
+            Assert.assertEquals(p.getTheta(), res.get(0).getPosition().getTheta(), 0.1);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testKalman() throws Exception {
+        FakeBeacon beacon = new FakeBeacon(new ImmutableRobotPosition(Math.PI, Math.E, 0));
+        ExtendedKalmanPositionIntegrator integ = new ExtendedKalmanPositionIntegrator(Collections.singletonList(beacon),
+                new ImmutableRobotPosition(Math.PI + 0.3, Math.E - 0.3, 0.2), 0.5, 0.5);
+        List<LocationCandidate> res = null;
+        for (int i = 0; i < 5; i++) {
+            res = integ.getCandidates(0.5);
+        }
+        Assert.assertEquals(1, res.size());
+        Assert.assertEquals(Math.PI, res.get(0).getPosition().getX(), 0.05);
+        Assert.assertEquals(Math.E, res.get(0).getPosition().getY(), 0.05);
+        Assert.assertEquals(0, res.get(0).getPosition().getTheta(), 0.05);
+
+        // follow the drive's odometry
+        FakeDrive drive = new FakeDrive(new ImmutableRobotPosition(Math.PI, Math.E, 0));
+        integ.setDrive(drive, 0.05, 0.05);
+        double[] estimate = new double[6];
+        for (int i = 0; i < 10; i++) {
+            drive.move(new RelativePosition(0.3, -0.1), false);
+            RobotPosition p = drive.getCurrentPosition();
+            beacon.setPos(p);
+            integ.getCandidates(0);
+            integ.getEstimate(estimate);
+            Assert.assertEquals(p.getX(), estimate[0], 0.05);
+            Assert.assertEquals(p.getY(), estimate[1], 0.05);
+            Assert.assertEquals(p.getTheta(), estimate[2], 0.05);
+            Assert.assertTrue(estimate[3] > 0 && estimate[4] > 0 && estimate[5] > 0);
+        }
+
+        // a beacon far outside the estimate's uncertainty is ignored, until the grid integrator takes over
+        beacon.setPos(new ImmutableRobotPosition(7, 8, 0));
+        Assert.assertTrue(integ.getCandidates(0.5).isEmpty());
+        integ.setRelocaliser(new WeightedAveragePositionIntegrator(Collections.singletonList(beacon), 10, 10), 0.5, 0.1, 0.5);
+        res = integ.getCandidates(0.5);
+        Assert.assertEquals(1, res.size());
+        Assert.assertEquals(7, integ.getPosition().getX(), 0.05);
+        Assert.assertEquals(8, integ.getPosition().getY(), 0.05);
+    }
+
     public void interactiveTest() throws Exception {
         List<Sensor> sens = new ArrayList<>();
         FakeXHill xH = new FakeXHill(Math.PI);
@@ -108,7 +364,7 @@ public class PositionIntegratorTest {
     }
 
 
-    private static class FakeXHill implements Sensor {
+    private static class FakeXHill implements BoundedSensor {
         private double pos;
 
         public FakeXHill(double pos) {
@@ -125,6 +381,11 @@ public class PositionIntegratorTest {
             return Math.exp(-Math.abs(Math.log(x / pos)));
         }
 
+        @Override
+        public double getLikelihoodBound(double minX, double minY, double maxX, double maxY) {
+            return getLikelihood(Math.min(maxX, Math.max(minX, pos)), minY);
+        }
+
         public void setPos(double pos) {
             this.pos = pos;
         }
@@ -153,7 +414,111 @@ public class PositionIntegratorTest {
         }
     }
 
-    private static class FakeYHill implements Sensor {
+    private static class BatchXHill extends FakeXHill implements BatchSensor {
+        private double pos;
+        int batches, singles;
+
+        public BatchXHill(double pos) {
+            super(pos);
+            this.pos = pos;
+        }
+
+        @Override
+        public void setPos(double pos) {
+            super.setPos(pos);
+            this.pos = pos;
+        }
+
+        @Override
+        public double getLikelihood(double x, double y) {
+            singles++;
+            return super.getLikelihood(x, y);
+        }
+
+        @Override
+        public void getLikelihoods(double[] xs, double[] ys, double[] out) {
+            batches++;
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = Math.exp(-Math.abs(Math.log(xs[i] / pos)));
+            }
+        }
+
+        @Override
+        public void getWeights(double[] xs, double[] ys, double[] out) {
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = getWeight(xs[i], ys[i]);
+            }
+        }
+    }
+
+    // a gaussian spot around a full pose, as from a camera fix on a field target
+    private static class FakeBeacon implements Sensor {
+        private static final double SIGMA = 0.2, THETA_SIGMA = 0.3;
+        private RobotPosition pos;
+
+        FakeBeacon(RobotPosition pos) {
+            this.pos = pos;
+        }
+
+        void setPos(RobotPosition pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public double getLikelihood(double x, double y) {
+            double dx = x - pos.getX(), dy = y - pos.getY();
+            return Math.exp(-(dx * dx + dy * dy) / (2 * SIGMA * SIGMA));
+        }
+
+        @Override
+        public double getOrientationLikelihood(double x, double y, double theta) {
+            double d = Math.IEEEremainder(theta - pos.getTheta(), 2 * Math.PI);
+            return Math.exp(-d * d / (2 * THETA_SIGMA * THETA_SIGMA));
+        }
+
+        @Override
+        public double getWeight(double x, double y) {
+            return 1;
+        }
+
+        @Override
+        public Iterable<RobotPosition> getPossibleHotspots() {
+            return Collections.singletonList(pos);
+        }
+
+        @Override
+        public void notifyError(double x, double y, double theta, double agreedWeight) {
+
+        }
+    }
+
+    // a drive that moves exactly as told
+    private static class FakeDrive extends RobotDrive {
+        FakeDrive(RobotPosition start) {
+            super(start);
+        }
+
+        @Override
+        protected void move0(RelativePosition travel, boolean suppressObstacles) {
+        }
+
+        @Override
+        protected double calculateDrift(RelativePosition travel) {
+            return 0;
+        }
+
+        @Override
+        protected double calculateAngularDrift(RelativePosition travel) {
+            return 0;
+        }
+
+        @Override
+        public double calculateTime(RelativePosition travel) {
+            return 0;
+        }
+    }
+
+    private static class FakeYHill implements BoundedSensor {
         public void setPos(double pos) {
             this.pos = pos;
         }
@@ -174,6 +539,11 @@ public class PositionIntegratorTest {
             return Math.exp(-Math.abs(Math.log(y / pos)));
         }
 
+        @Override
+        public double getLikelihoodBound(double minX, double minY, double maxX, double maxY) {
+            return getLikelihood(minX, Math.min(maxY, Math.max(minY, pos)));
+        }
+
         @Override
         public double getWeight(double x, double y) {
             return 1;
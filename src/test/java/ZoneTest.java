@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 FTC team 6460 et. al.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import ftc.team6460.javadeck.api.planner.ObstacleException;
+import ftc.team6460.javadeck.api.planner.geom.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for zone geometry.
+ */
+public class ZoneTest {
+    private static final Point2D[] SQUARE = {new Point2D(0, 0), new Point2D(1000, 0), new Point2D(1000, 1000), new Point2D(0, 1000)};
+    private static final Point2D[] L_SHAPE = {new Point2D(0, 0), new Point2D(2000, 0), new Point2D(2000, 1000),
+            new Point2D(1000, 1000), new Point2D(1000, 2000), new Point2D(0, 2000)};
+
+    @Test
+    public void testContains() throws Exception {
+        Field.Zone z = new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, L_SHAPE);
+        Assert.assertTrue(z.contains(new Point2D(500, 1500)));
+        Assert.assertTrue(z.contains(new Point2D(1500, 500)));
+        Assert.assertFalse(z.contains(new Point2D(1500, 1500)));
+        Assert.assertFalse(z.contains(new Point2D(-1, 500)));
+    }
+
+    @Test
+    public void testInflation() throws Exception {
+        for (Point2D[] poly : new Point2D[][]{SQUARE, L_SHAPE, reverse(L_SHAPE)}) {
+            Field.Zone z = new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, poly, 100);
+            Field f = new Field(z);
+            assertBlocked(f, new Point2D(-90, 500));
+            assertBlocked(f, new Point2D(-65, -65));
+            f.addWaypoint(f.getWaypoint(new Point2D(-110, 500)));
+            f.addWaypoint(f.getWaypoint(new Point2D(-75, -75)));
+            for (Point2D v : z.getInflatedVertices()) {
+                Assert.assertFalse("inflated outline cuts into the rounded corner", Math.hypot(v.getX(), v.getY()) < 99 && v.getX() < 0 && v.getY() < 0);
+            }
+        }
+        Field.Zone z = new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, L_SHAPE, 100);
+        // inside the notch of the L, within reach of both arms
+        assertBlocked(new Field(z), new Point2D(1050, 1050));
+        z.setInflationRadius(10);
+        Field f = new Field(z);
+        f.addWaypoint(f.getWaypoint(new Point2D(1050, 1050)));
+    }
+
+    @Test
+    public void testInflatedConnection() throws Exception {
+        Field f = new Field(new Field.Zone(Field.ZoneMode.ZONE_ILLEGAL, SQUARE, 100));
+        Waypoint a = f.getWaypoint(new Point2D(-50, -500));
+        Waypoint b = f.getWaypoint(new Point2D(-50, 1500));
+        f.addWaypoint(a);
+        f.addWaypoint(b);
+        try {
+            f.addConnection(a, b);
+            Assert.fail("connection grazing an inflated zone was accepted");
+        } catch (ObstacleException expected) {
+        }
+    }
+
+    @Test
+    public void testFootprint() throws Exception {
+        // the square spans 0..1000 on both axes
+        Field f = new Field(new Field.Zone(Field.ZoneMode.ZONE_OBSTACLE, SQUARE));
+        f.setRobotFootprint(400, 400);
+        // half the robot's width is 200mm
+        Assert.assertFalse(f.hasLineOfSight(new Point2D(-1000, 1150), new Point2D(2000, 1150)));
+        Assert.assertTrue(f.hasLineOfSight(new Point2D(-1000, 1250), new Point2D(2000, 1250)));
+        Assert.assertFalse(f.hasLineOfSight(new Point2D(-150, -500), new Point2D(-150, 1500)));
+        Assert.assertTrue(f.hasLineOfSight(new Point2D(-250, -500), new Point2D(-250, 1500)));
+        // stopping short of the square, but with the front of the robot reaching it
+        Assert.assertFalse(f.hasLineOfSight(new Point2D(500, -1000), new Point2D(500, -150)));
+        Assert.assertTrue(f.hasLineOfSight(new Point2D(500, -1000), new Point2D(500, -250)));
+        // diagonal, passing the corner at (1000, 1000) by 141mm and by 283mm
+        Assert.assertFalse(f.hasLineOfSight(new Point2D(0, 2200), new Point2D(2200, 0)));
+        Assert.assertTrue(f.hasLineOfSight(new Point2D(0, 2400), new Point2D(2400, 0)));
+        // entirely inside
+        Assert.assertFalse(f.hasLineOfSight(new Point2D(400, 500), new Point2D(600, 500)));
+
+        // a small zone entirely within the swept rectangle
+        Field g = new Field(new Field.Zone(Field.ZoneMode.ZONE_ILLEGAL, new Point2D[]{
+                new Point2D(0, 0), new Point2D(10, 0), new Point2D(10, 10), new Point2D(0, 10)}));
+        g.setRobotFootprint(400, 0);
+        Waypoint a = g.getWaypoint(new Point2D(-1000, 5));
+        Waypoint b = g.getWaypoint(new Point2D(1000, 100));
+        g.addWaypoint(a);
+        g.addWaypoint(b);
+        try {
+            g.addConnection(a, b);
+            Assert.fail("footprint sweeping over a zone was accepted");
+        } catch (ObstacleException expected) {
+        }
+    }
+
+    private static void assertBlocked(Field f, Point2D p) throws Exception {
+        try {
+            f.addWaypoint(f.getWaypoint(p));
+            Assert.fail("waypoint inside inflated obstacle was accepted: " + p);
+        } catch (ObstacleException expected) {
+        }
+    }
+
+    private static Point2D[] reverse(Point2D[] poly) {
+        Point2D[] r = new Point2D[poly.length];
+        for (int i = 0; i < poly.length; i++) {
+            r[i] = poly[poly.length - 1 - i];
+        }
+        return r;
+    }
+}